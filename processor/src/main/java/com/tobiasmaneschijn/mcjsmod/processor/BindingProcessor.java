@@ -0,0 +1,185 @@
+package com.tobiasmaneschijn.mcjsmod.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@code <ClassName>Binding} for every {@link JSApi} class. Each {@link JSFunction}
+ * becomes one specialised proxy that decodes its arguments with {@code HostArgs} and calls the
+ * method directly, so no script call goes through reflection or a per-call member lookup.
+ */
+@SupportedAnnotationTypes("com.tobiasmaneschijn.mcjsmod.processor.JSApi")
+public class BindingProcessor extends AbstractProcessor {
+    private static final String BINDING_PACKAGE = "com.tobiasmaneschijn.mcjsmod.javascript.binding";
+    private static final String ENGINE_TYPE = "com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IJavascriptEngine";
+    private static final String VALUE_TYPE = "org.graalvm.polyglot.Value";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(JSApi.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@JSApi can only be used on classes");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            try {
+                String source = generate(type);
+                if (source != null) {
+                    write(type, source);
+                }
+            } catch (IOException e) {
+                error(type, "Failed to write binding: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private String generate(TypeElement type) {
+        String apiName = type.getAnnotation(JSApi.class).value();
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String apiClass = type.getSimpleName().toString();
+        boolean valid = true;
+
+        StringBuilder out = new StringBuilder();
+        out.append("package ").append(packageName).append(";\n\n");
+        out.append("import ").append(BINDING_PACKAGE).append(".HostArgs;\n");
+        out.append("import ").append(BINDING_PACKAGE).append(".HostBinder;\n");
+        out.append("import ").append(ENGINE_TYPE).append(";\n\n");
+        out.append("// Generated by BindingProcessor from ").append(apiClass).append(", do not edit\n");
+        out.append("public final class ").append(apiClass).append("Binding {\n");
+        out.append("    public static final String NAME = \"").append(apiName).append("\";\n\n");
+        out.append("    private ").append(apiClass).append("Binding() {\n    }\n\n");
+        out.append("    public static void bind(IJavascriptEngine engine, ").append(apiClass).append(" api) {\n");
+        out.append("        HostBinder binder = ")
+                .append(apiName.isEmpty() ? "engine.getGlobalBinder()" : "engine.bindObject(NAME)")
+                .append(";\n");
+
+        for (Element member : type.getEnclosedElements()) {
+            JSFunction function = member.getAnnotation(JSFunction.class);
+            if (function == null) {
+                continue;
+            }
+            if (member.getKind() != ElementKind.METHOD
+                    || !member.getModifiers().contains(Modifier.PUBLIC)
+                    || member.getModifiers().contains(Modifier.STATIC)) {
+                error(member, "@JSFunction must be on a public instance method");
+                valid = false;
+                continue;
+            }
+            valid &= generateFunction(out, apiName, (ExecutableElement) member, function);
+        }
+
+        out.append("    }\n}\n");
+        return valid ? out.toString() : null;
+    }
+
+    private boolean generateFunction(StringBuilder out, String apiName, ExecutableElement method, JSFunction function) {
+        String name = function.value().isEmpty() ? method.getSimpleName().toString() : function.value();
+        String qualified = apiName.isEmpty() ? name : apiName + "." + name;
+        List<? extends VariableElement> parameters = method.getParameters();
+
+        out.append("        binder.raw(\"").append(name).append("\", args -> {\n");
+
+        StringBuilder call = new StringBuilder("api.").append(method.getSimpleName()).append('(');
+        for (int i = 0; i < parameters.size(); i++) {
+            boolean rest = method.isVarArgs() && i == parameters.size() - 1;
+            String decoder = decoder(parameters.get(i).asType(), i, qualified, rest);
+            if (decoder == null) {
+                error(parameters.get(i), "Unsupported @JSFunction parameter type " + parameters.get(i).asType());
+                return false;
+            }
+            out.append("            ").append(decoder).append(";\n");
+            call.append(i == 0 ? "" : ", ").append("arg").append(i);
+        }
+        call.append(')');
+
+        String indent = "            ";
+        boolean checked = !method.getThrownTypes().isEmpty();
+        if (checked) {
+            out.append("            try {\n");
+            indent = "                ";
+        }
+        if (method.getReturnType().getKind() == TypeKind.VOID) {
+            out.append(indent).append(call).append(";\n");
+            out.append(indent).append("return null;\n");
+        } else {
+            out.append(indent).append("return ").append(call).append(";\n");
+        }
+        if (checked) {
+            out.append("            } catch (RuntimeException e) {\n");
+            out.append("                throw e;\n");
+            out.append("            } catch (Exception e) {\n");
+            out.append("                throw new RuntimeException(e);\n");
+            out.append("            }\n");
+        }
+        out.append("        });\n");
+        return true;
+    }
+
+    private String decoder(TypeMirror type, int index, String function, boolean rest) {
+        String target = "arg" + index;
+        String location = "args, " + index + ", \"" + function + "\")";
+        if (rest) {
+            ArrayType array = (ArrayType) type;
+            return isValue(array.getComponentType()) ? VALUE_TYPE + "[] " + target + " = HostArgs.rest(args, " + index + ")" : null;
+        }
+        switch (type.getKind()) {
+            case INT:
+                return "int " + target + " = HostArgs.int32(" + location;
+            case DOUBLE:
+                return "double " + target + " = HostArgs.number(" + location;
+            case BOOLEAN:
+                return "boolean " + target + " = HostArgs.bool(" + location;
+            case ARRAY:
+                return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE
+                        ? "byte[] " + target + " = HostArgs.bytes(" + location
+                        : null;
+            case DECLARED:
+                if (type.toString().equals("java.lang.String")) {
+                    return "String " + target + " = HostArgs.string(" + location;
+                }
+                if (type.toString().equals("java.nio.ByteBuffer")) {
+                    return "java.nio.ByteBuffer " + target + " = HostArgs.buffer(" + location;
+                }
+                if (isValue(type)) {
+                    return VALUE_TYPE + " " + target + " = HostArgs.value(args, " + index + ")";
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isValue(TypeMirror type) {
+        return type.toString().equals(VALUE_TYPE);
+    }
+
+    private void write(TypeElement type, String source) throws IOException {
+        String name = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName() + "." + type.getSimpleName() + "Binding";
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(name, type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(source);
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,18 @@
+package com.tobiasmaneschijn.mcjsmod.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose {@link JSFunction} methods are exposed to computer scripts. The value is
+ * the global object the functions are bound to; an empty value binds them as globals.
+ * A {@code <ClassName>Binding} class with a static {@code bind(IJavascriptEngine, ClassName)}
+ * method is generated next to it at compile time.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface JSApi {
+    String value();
+}
@@ -0,0 +1,19 @@
+package com.tobiasmaneschijn.mcjsmod.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Exposes a public method of a {@link JSApi} class to scripts. Parameters may be
+ * {@code String}, {@code int}, {@code double}, {@code boolean}, {@code byte[]},
+ * {@code ByteBuffer} or a raw {@code Value}; a trailing {@code Value...} receives the
+ * remaining arguments. The value overrides the script-side name, which defaults to the
+ * method name.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface JSFunction {
+    String value() default "";
+}
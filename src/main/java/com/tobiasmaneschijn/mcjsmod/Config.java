@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ExecutionMode;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.item.Item;
@@ -34,9 +35,27 @@ public class Config
     public static ModConfigSpec.LongValue MAX_MEMORY_USAGE = BUILDER
             .comment("Maximum memory usage for all scripts in bytes")
             .defineInRange("maxMemoryUsage", 100 * 1024 * 1024L, 10 * 1024 * 1024L, 1024 * 1024 * 1024L);
+    public static ModConfigSpec.LongValue MIN_MEMORY_SHARE = BUILDER
+            .comment("Memory each computer may allocate per accounting window in bytes, however many computers share maxMemoryUsage")
+            .defineInRange("minMemoryShare", 16 * 1024 * 1024L, 1024 * 1024L, 256 * 1024 * 1024L);
     public static ModConfigSpec.IntValue MAX_CONTEXTS_PER_PLAYER = BUILDER
             .comment("Maximum number of script contexts a player can have")
             .defineInRange("maxContextsPerPlayer", 3, 1, 10);
+    public static ModConfigSpec.EnumValue<ExecutionMode> EXECUTION_MODE = BUILDER
+            .comment("THREADED runs scripts on background workers, TICK runs them on the server thread within tickBudgetMicros per tick")
+            .defineEnum("executionMode", ExecutionMode.THREADED);
+    public static ModConfigSpec.IntValue TICK_BUDGET_MICROS = BUILDER
+            .comment("Time in microseconds all computers together may run per server tick in TICK execution mode")
+            .defineInRange("tickBudgetMicros", 2000, 100, 50000);
+    public static ModConfigSpec.IntValue TICK_TASK_LIMIT_MILLIS = BUILDER
+            .comment("Time in milliseconds a single script task may hold the server thread in TICK execution mode before it is stopped. The tick budget is only checked between tasks")
+            .defineInRange("tickTaskLimitMillis", 50, 10, 1000);
+    public static ModConfigSpec.IntValue HIBERNATE_AFTER_SECONDS = BUILDER
+            .comment("Seconds without input, timers or viewers after which a computer's script context is closed until it is used again. 0 disables hibernation")
+            .defineInRange("hibernateAfterSeconds", 300, 0, 86400);
+    public static ModConfigSpec.LongValue DISK_QUOTA = BUILDER
+            .comment("Space each computer's files may take up in bytes. Every file and directory counts as at least 256 bytes")
+            .defineInRange("diskQuota", 2 * 1024 * 1024L, 64 * 1024L, 1024 * 1024 * 1024L);
 
 
     static final ModConfigSpec SPEC = BUILDER.build();
@@ -47,7 +66,13 @@ public class Config
         MAX_CONCURRENT_SCRIPTS.get();
         MAX_SCRIPT_EXECUTION_TIME.get();
         MAX_MEMORY_USAGE.get();
+        MIN_MEMORY_SHARE.get();
         MAX_CONTEXTS_PER_PLAYER.get();
+        EXECUTION_MODE.get();
+        TICK_BUDGET_MICROS.get();
+        TICK_TASK_LIMIT_MILLIS.get();
+        HIBERNATE_AFTER_SECONDS.get();
+        DISK_QUOTA.get();
 
         MCJSMod.LOGGER.debug("Loaded MCJSMod config file {}", event.getConfig().getFileName());
     }
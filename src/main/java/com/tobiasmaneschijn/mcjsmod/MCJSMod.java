@@ -2,8 +2,15 @@ package com.tobiasmaneschijn.mcjsmod;
 
 import com.mojang.logging.LogUtils;
 import com.tobiasmaneschijn.mcjsmod.block.ModBlocks;
+import com.tobiasmaneschijn.mcjsmod.blockentity.ComputerBootQueue;
 import com.tobiasmaneschijn.mcjsmod.blockentity.ModBlockEntities;
+import com.tobiasmaneschijn.mcjsmod.command.ComputerCommand;
 import com.tobiasmaneschijn.mcjsmod.item.ModItems;
+import com.tobiasmaneschijn.mcjsmod.javascript.GraalEngineCache;
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.FileSystemStore;
+import com.tobiasmaneschijn.mcjsmod.javascript.pipeline.Pipelines;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ComputerEventLoop;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ScriptScheduler;
 import com.tobiasmaneschijn.mcjsmod.javascript.command.CommandLoader;
 import com.tobiasmaneschijn.mcjsmod.network.ClientPayloadHandler;
 import com.tobiasmaneschijn.mcjsmod.network.NetworkHandler;
@@ -20,10 +27,15 @@ import net.neoforged.fml.event.lifecycle.FMLClientSetupEvent;
 import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.neoforged.neoforge.client.event.RegisterMenuScreensEvent;
 import net.neoforged.neoforge.common.NeoForge;
+import net.neoforged.neoforge.event.RegisterCommandsEvent;
+import net.neoforged.neoforge.event.server.ServerAboutToStartEvent;
 import net.neoforged.neoforge.event.server.ServerStartingEvent;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
 import net.neoforged.neoforge.event.server.ServerStoppingEvent;
 import net.neoforged.neoforge.network.event.RegisterPayloadHandlersEvent;
 import net.neoforged.neoforge.network.registration.PayloadRegistrar;
+import net.minecraft.world.level.storage.LevelResource;
 import org.slf4j.Logger;
 
 import static com.tobiasmaneschijn.mcjsmod.ui.ModCreativeTabs.CREATIVE_MODE_TABS;
@@ -71,16 +83,44 @@ public class MCJSMod
 
     }
 
+    @SubscribeEvent
+    public void onServerAboutToStart(ServerAboutToStartEvent event) {
+        // Before any chunk loads, so computers can read their file systems in loadAdditional
+        FileSystemStore.setBaseDirectory(event.getServer().getWorldPath(LevelResource.ROOT).resolve(MODID));
+        FileSystemStore.collectGarbage();
+    }
+
     @SubscribeEvent
     public void onServerStarting(ServerStartingEvent event) {
 
     }
 
+    @SubscribeEvent
+    public void onRegisterCommands(RegisterCommandsEvent event) {
+        ComputerCommand.register(event.getDispatcher());
+    }
+
+    @SubscribeEvent
+    public void onServerTick(ServerTickEvent.Post event) {
+        ScriptScheduler.runTick();
+    }
+
     @SubscribeEvent
     public void onServerStopping(ServerStoppingEvent event) {
 
     }
 
+    @SubscribeEvent
+    public void onServerStopped(ServerStoppedEvent event) {
+        ComputerBootQueue.shutdown();
+        ComputerEventLoop.shutdownClock();
+        Pipelines.shutdown();
+        ScriptScheduler.shutdown();
+        GraalEngineCache.close();
+        FileSystemStore.shutdown();
+        FileSystemStore.setBaseDirectory(null);
+    }
+
 
 
 
@@ -1,6 +1,7 @@
 package com.tobiasmaneschijn.mcjsmod.block;
 
 import com.tobiasmaneschijn.mcjsmod.blockentity.ComputerBlockEntity;
+import com.tobiasmaneschijn.mcjsmod.blockentity.ModBlockEntities;
 import com.tobiasmaneschijn.mcjsmod.ui.screen.ComputerScreen;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
@@ -12,6 +13,8 @@ import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.EntityBlock;
 import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.entity.BlockEntityTicker;
+import net.minecraft.world.level.block.entity.BlockEntityType;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.block.state.StateDefinition;
 import net.minecraft.world.level.block.state.properties.BlockStateProperties;
@@ -51,7 +54,12 @@ public class ComputerBlock extends Block implements EntityBlock {
 
     @Override
     protected InteractionResult useWithoutItem(BlockState state, Level level, BlockPos pos, Player player, BlockHitResult hitResult) {
-        if(!level.isClientSide) return InteractionResult.SUCCESS;
+        if(!level.isClientSide) {
+            if (level.getBlockEntity(pos) instanceof ComputerBlockEntity computerBlockEntity) {
+                computerBlockEntity.onViewed();
+            }
+            return InteractionResult.SUCCESS;
+        }
 
         BlockEntity blockEntity = level.getBlockEntity(pos);
         // open screen
@@ -63,6 +71,24 @@ public class ComputerBlock extends Block implements EntityBlock {
         return InteractionResult.FAIL;
     }
 
+    @Override
+    protected void onRemove(BlockState state, Level level, BlockPos pos, BlockState newState, boolean movedByPiston) {
+        // Only when the computer itself goes, not when just its state changes
+        if (!level.isClientSide && !state.is(newState.getBlock()) && level.getBlockEntity(pos) instanceof ComputerBlockEntity computerBlockEntity) {
+            computerBlockEntity.onDestroyed();
+        }
+        super.onRemove(state, level, pos, newState, movedByPiston);
+    }
+
+    @Nullable
+    @Override
+    public <T extends BlockEntity> BlockEntityTicker<T> getTicker(Level level, BlockState state, BlockEntityType<T> type) {
+        if (level.isClientSide || type != ModBlockEntities.COMPUTER_BLOCK_ENTITY.get()) {
+            return null;
+        }
+        return (tickerLevel, pos, tickerState, blockEntity) -> ((ComputerBlockEntity) blockEntity).serverTick();
+    }
+
     @Nullable
     @Override
     public BlockEntity newBlockEntity(BlockPos blockPos, BlockState blockState) {
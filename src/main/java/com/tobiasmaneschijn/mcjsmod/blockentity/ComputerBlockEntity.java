@@ -35,8 +35,8 @@ import java.util.stream.Collectors;
 public class ComputerBlockEntity extends BlockEntity {
 
 
-    private IFileSystem fileSystem;
-    private IJavascriptEngine javascriptEngine;
+    private final IFileSystem fileSystem;
+    private volatile IJavascriptEngine javascriptEngine;
     private final List<String> outputBuffer;
     private String latestResult = "";
     private String latestConsoleOutput = "";
@@ -46,12 +46,35 @@ public class ComputerBlockEntity extends BlockEntity {
 
     private static final int MAX_OUTPUT_BUFFER_SIZE = 1000; // Adjust as needed
 
+    // Shared by every computer so the bootloader and OS core are read from the jar and hashed only once
+    private static String bootloaderScript;
+    private static String osCoreScript;
+
+    private static final int HIBERNATION_CHECK_INTERVAL = 20;
+
+    // Engines are created lazily on the boot queue; guarded by synchronized (this)
+    private enum EngineState { STOPPED, QUEUED, BOOTING, RUNNING, HIBERNATING }
+    private EngineState engineState = EngineState.STOPPED;
+    private volatile boolean unloaded = false;
+    private boolean hadPendingTimers = false;
+
+    // Hibernation: after a while without activity the context is closed and only the file system
+    // and this resume record are kept. The next input or screen open boots a fresh context.
+    private volatile boolean resuming = false;
+    private volatile String wakeInput;
+    private long lastActivityMillis = System.currentTimeMillis();
+    private int hibernationCheckTimer = 0;
+    private volatile String workingDirectory = "/";
+    private volatile String pendingPrompt;
+
     private boolean hasNewOutput = false;
 
     public ComputerBlockEntity(BlockPos pos, BlockState blockState) {
         super(ModBlockEntities.COMPUTER_BLOCK_ENTITY.get(), pos, blockState);
         this.outputBuffer = new ArrayList<>();
-
+        // Created up front so loadAdditional, which runs before onLoad, has somewhere to load into
+        this.fileSystem = new VirtualFileSystem();
+        this.fileSystem.setQuota(Config.DISK_QUOTA.get());
     }
 
     public CompletableFuture<String> getPendingInput() {
@@ -62,25 +85,115 @@ public class ComputerBlockEntity extends BlockEntity {
     public void onLoad() {
         super.onLoad();
         if (level != null && !level.isClientSide) {
-            this.fileSystem = new VirtualFileSystem();
-            this.javascriptEngine = new GraalJavascriptEngine();
+            requestBoot(hadPendingTimers ? ComputerBootQueue.Priority.PENDING_TIMERS : ComputerBootQueue.Priority.NORMAL);
+        }
+        else {
+            MCJSMod.LOGGER.error("ComputerBlockEntity not initialized, not on logical server");
+        }
+    }
 
-            try {
-                MCJSMod.LOGGER.info("Initializing ComputerBlockEntity");
-                this.javascriptEngine.initialize();
-                ModJSBindings.bindFunctions(javascriptEngine, this);
-                MCJSMod.LOGGER.info("ComputerBlockEntity initialized successfully");
+    private synchronized void requestBoot(ComputerBootQueue.Priority priority) {
+        if (unloaded || level == null || level.isClientSide) {
+            return;
+        }
+        switch (engineState) {
+            case STOPPED, HIBERNATING -> {
+                // The client still shows the old session, so the boot output and first prompt aren't printed again
+                resuming = engineState == EngineState.HIBERNATING && pendingPrompt != null;
+                engineState = EngineState.QUEUED;
+                ComputerBootQueue.enqueue(this, priority);
+            }
+            case QUEUED -> {
+                if (priority == ComputerBootQueue.Priority.VIEWED) {
+                    ComputerBootQueue.enqueue(this, priority);
+                }
+            }
+            default -> {
+            }
+        }
+    }
 
-                if (!isOSInitialized) {
-                    initializeOS();
+    // Called on the boot thread
+    void boot() {
+        synchronized (this) {
+            if (engineState != EngineState.QUEUED || unloaded) {
+                return;
+            }
+            engineState = EngineState.BOOTING;
+        }
+        startEngine();
+        synchronized (this) {
+            if (unloaded) {
+                // Chunk went away while we were booting
+                if (javascriptEngine != null) {
+                    javascriptEngine.shutdown();
+                    javascriptEngine = null;
                 }
-            } catch (Exception e) {
-                MCJSMod.LOGGER.error("Error initializing ComputerBlockEntity", e);
+                engineState = EngineState.STOPPED;
+            } else {
+                engineState = javascriptEngine != null ? EngineState.RUNNING : EngineState.STOPPED;
             }
         }
-        else {
-            MCJSMod.LOGGER.error("ComputerBlockEntity not initialized, not on logical server");
+    }
+
+    private void startEngine() {
+        IJavascriptEngine engine = new GraalJavascriptEngine(level.dimension().location() + "@" + worldPosition.toShortString());
+
+        try {
+            MCJSMod.LOGGER.info("Initializing ComputerBlockEntity");
+            engine.initialize();
+            engine.subscribeToOutput(this::handleScriptOutput);
+            engine.subscribeToError(error -> handleOutput("<ERROR> " + error + " </ERROR>"));
+            engine.subscribeToReset(() -> requestReboot(engine));
+            ModJSBindings.bindFunctions(engine, this);
+            this.javascriptEngine = engine;
+            MCJSMod.LOGGER.info("ComputerBlockEntity initialized successfully");
+
+            if (!isOSInitialized) {
+                initializeOS();
+            }
+        } catch (Exception e) {
+            MCJSMod.LOGGER.error("Error initializing ComputerBlockEntity", e);
+        }
+    }
+
+    public void serverTick() {
+        if (++hibernationCheckTimer < HIBERNATION_CHECK_INTERVAL) {
+            return;
         }
+        hibernationCheckTimer = 0;
+        if (shouldHibernate()) {
+            hibernate();
+        }
+    }
+
+    private synchronized boolean shouldHibernate() {
+        long hibernateAfterMillis = Config.HIBERNATE_AFTER_SECONDS.get() * 1000L;
+        return hibernateAfterMillis > 0
+                && engineState == EngineState.RUNNING
+                && javascriptEngine != null
+                && System.currentTimeMillis() - lastActivityMillis > hibernateAfterMillis
+                && !javascriptEngine.getEventLoop().hasPendingTimers()
+                && !javascriptEngine.getEventLoop().hasPendingTasks();
+    }
+
+    private synchronized void hibernate() {
+        MCJSMod.LOGGER.info("Hibernating idle computer at " + worldPosition.toShortString());
+        javascriptEngine.shutdown();
+        javascriptEngine = null;
+        pendingInput = null;
+        isOSInitialized = false;
+        engineState = EngineState.HIBERNATING;
+    }
+
+    public synchronized boolean isHibernating() {
+        return engineState == EngineState.HIBERNATING;
+    }
+
+    // Called on the server when a player opens this computer
+    public void onViewed() {
+        lastActivityMillis = System.currentTimeMillis();
+        requestBoot(ComputerBootQueue.Priority.VIEWED);
     }
 
     private boolean shouldClearInput = false;
@@ -97,13 +210,31 @@ public class ComputerBlockEntity extends BlockEntity {
         return false;
     }
 
+    // Boots a fresh engine on the boot queue after the old context was forcibly closed, e.g. by
+    // the script watchdog. A reset while still booting just leaves the computer stopped until used.
+    private synchronized void requestReboot(IJavascriptEngine engine) {
+        if (javascriptEngine != engine || unloaded) {
+            return;
+        }
+        MCJSMod.LOGGER.info("Rebooting ComputerBlockEntity after context reset");
+        engine.shutdown();
+        javascriptEngine = null;
+        pendingInput = null;
+        isOSInitialized = false;
+        boolean wasRunning = engineState == EngineState.RUNNING;
+        engineState = EngineState.STOPPED;
+        handleOutput("Rebooting...");
+        if (wasRunning) {
+            requestBoot(ComputerBootQueue.Priority.NORMAL);
+        }
+    }
+
     private void initializeOS() {
 
 
         if (javascriptEngine != null && !isOSInitialized && level != null && !level.isClientSide) {
             try {
-                String bootloaderScript = loadResourceScript("/data/mcjsmod/js/bootloader.js");
-                javascriptEngine.loadScript(bootloaderScript);
+                javascriptEngine.loadScript(getBootloaderScript());
 
                 try {
                     javascriptEngine.executeScript();
@@ -120,8 +251,30 @@ public class ComputerBlockEntity extends BlockEntity {
             MCJSMod.LOGGER.error("OS already initialized or not on logical server");
         }
     }
-    private String loadResourceScript(String resourcePath) {
-        try (InputStream inputStream = getClass().getResourceAsStream(resourcePath)) {
+    public static synchronized String getOsCoreScript() {
+        if (osCoreScript == null) {
+            osCoreScript = loadResourceScript("/data/mcjsmod/js/os.js");
+        }
+        return osCoreScript;
+    }
+
+    public String getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    public void setWorkingDirectory(String workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+    private static synchronized String getBootloaderScript() {
+        if (bootloaderScript == null) {
+            bootloaderScript = loadResourceScript("/data/mcjsmod/js/bootloader.js");
+        }
+        return bootloaderScript;
+    }
+
+    private static String loadResourceScript(String resourcePath) {
+        try (InputStream inputStream = ComputerBlockEntity.class.getResourceAsStream(resourcePath)) {
             if (inputStream != null) {
                 return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
             } else {
@@ -173,22 +326,21 @@ public class ComputerBlockEntity extends BlockEntity {
     @Override
     protected void saveAdditional(CompoundTag tag, HolderLookup.Provider registries) {
         super.saveAdditional(tag, registries);
-        if (fileSystem != null) {
-            fileSystem.save(tag);
-        }
-        tag.putBoolean("isOSInitialized", isOSInitialized);
+        fileSystem.save(tag);
+        tag.putString("workingDirectory", workingDirectory);
+        IJavascriptEngine engine = javascriptEngine;
+        tag.putBoolean("hasPendingTimers", engine != null && engine.getEventLoop().hasPendingTimers());
     }
 
     @Override
     public void loadAdditional(CompoundTag tag, HolderLookup.Provider registries) {
         super.loadAdditional(tag, registries);
-        if (fileSystem != null) {
-            fileSystem.load(tag);
-            isOSInitialized = tag.getBoolean("isOSInitialized");
-            if (!isOSInitialized) {
-                initializeOS();
-            }
+        if (tag.contains("workingDirectory")) {
+            workingDirectory = tag.getString("workingDirectory");
         }
+        hadPendingTimers = tag.getBoolean("hasPendingTimers");
+        // The OS always boots fresh in a new context, so only the files are restored
+        fileSystem.load(tag);
     }
 
     public IFileSystem getFileSystem() {
@@ -197,6 +349,14 @@ public class ComputerBlockEntity extends BlockEntity {
 
     public void provideInput(String input) {
         MCJSMod.LOGGER.info("Input provided to ComputerBlockEntity: " + input);
+        lastActivityMillis = System.currentTimeMillis();
+        if (javascriptEngine == null) {
+            // Not booted yet or hibernating, delivered to the first readLine of the new context
+            wakeInput = input;
+            requestBoot(ComputerBootQueue.Priority.VIEWED);
+            return;
+        }
+        pendingPrompt = null;
         if (pendingInput != null && !pendingInput.isDone()) {
             MCJSMod.LOGGER.info("Completing pending input: " + input);
             pendingInput.complete(input);
@@ -212,7 +372,19 @@ public class ComputerBlockEntity extends BlockEntity {
     public CompletableFuture<String> requestInput(String prompt) {
         MCJSMod.LOGGER.info("Input requested with prompt: " + prompt);
         pendingInput = new CompletableFuture<>();
-        handleOutput(prompt);
+        pendingPrompt = prompt;
+        if (resuming) {
+            // Back where it was before hibernating; from here on everything is shown again
+            resuming = false;
+        } else {
+            handleOutput(prompt);
+        }
+        String input = wakeInput;
+        if (input != null) {
+            wakeInput = null;
+            pendingPrompt = null;
+            pendingInput.complete(input);
+        }
         return pendingInput;
     }
 
@@ -234,7 +406,19 @@ public class ComputerBlockEntity extends BlockEntity {
     }
 
 
+    // Normal output of the computer's scripts. Errors go straight to handleOutput, so they are shown even while resuming
+    public void handleScriptOutput(String output) {
+        if (!resuming) {
+            handleOutput(output);
+        }
+    }
+
     public void handleOutput(String output) {
+        if (level != null && level.getServer() != null && !level.getServer().isSameThread()) {
+            // Scripts may run on scheduler workers; only touch the level from the server thread
+            level.getServer().execute(() -> handleOutput(output));
+            return;
+        }
         MCJSMod.LOGGER.info("Handling output in ComputerBlockEntity: " + output);
         if (level != null && !level.isClientSide) {
             ServerToClientOutputPayload payload = new ServerToClientOutputPayload(worldPosition, output, false);
@@ -263,10 +447,29 @@ public class ComputerBlockEntity extends BlockEntity {
     @Override
     public void onChunkUnloaded() {
         super.onChunkUnloaded();
+        stopEngine();
+    }
+
+    // Called by the block when it is broken or replaced; unlike an unload, its files go too
+    public void onDestroyed() {
+        stopEngine();
+        fileSystem.destroy();
+    }
+
+    private synchronized void stopEngine() {
+        unloaded = true;
         if (javascriptEngine != null) {
             javascriptEngine.shutdown();
-            ModJSBindings.shutdown();
+            javascriptEngine = null;
         }
+        engineState = EngineState.STOPPED;
+    }
+
+    // Broken, or unloaded after its chunk was saved; either way its shared file contents can go
+    @Override
+    public void setRemoved() {
+        super.setRemoved();
+        fileSystem.release();
     }
 
 
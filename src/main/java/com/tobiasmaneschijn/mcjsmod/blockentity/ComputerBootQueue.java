@@ -0,0 +1,77 @@
+package com.tobiasmaneschijn.mcjsmod.blockentity;
+
+import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Boots computers in the background so loading a chunk never waits on Graal context creation.
+ * Requests are served by priority and then in arrival order; a computer that is asked for again
+ * with a higher priority, e.g. because a player opened it, simply gets a second, earlier entry.
+ */
+public class ComputerBootQueue {
+
+    public enum Priority {
+        // A player is looking at or typing into the computer
+        VIEWED,
+        // The computer had timers pending when it was last saved
+        PENDING_TIMERS,
+        NORMAL
+    }
+
+    private record BootRequest(ComputerBlockEntity computer, Priority priority, long sequence) implements Comparable<BootRequest> {
+        @Override
+        public int compareTo(BootRequest other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final PriorityBlockingQueue<BootRequest> queue = new PriorityBlockingQueue<>();
+    private static final AtomicLong sequence = new AtomicLong();
+    private static Thread bootThread;
+
+    static void enqueue(ComputerBlockEntity computer, Priority priority) {
+        ensureStarted();
+        queue.add(new BootRequest(computer, priority, sequence.getAndIncrement()));
+    }
+
+    public static int size() {
+        return queue.size();
+    }
+
+    private static synchronized void ensureStarted() {
+        if (bootThread != null) {
+            return;
+        }
+        bootThread = new Thread(ComputerBootQueue::bootLoop, "MCJS-Boot");
+        bootThread.setDaemon(true);
+        bootThread.start();
+    }
+
+    private static void bootLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            BootRequest request;
+            try {
+                request = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                // Ignored if the computer was already booted by an earlier request or unloaded
+                request.computer().boot();
+            } catch (Exception e) {
+                MCJSMod.LOGGER.error("Error booting computer at " + request.computer().getBlockPos().toShortString(), e);
+            }
+        }
+    }
+
+    public static synchronized void shutdown() {
+        if (bootThread != null) {
+            bootThread.interrupt();
+            bootThread = null;
+        }
+        queue.clear();
+    }
+}
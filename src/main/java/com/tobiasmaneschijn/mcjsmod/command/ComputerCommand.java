@@ -0,0 +1,54 @@
+package com.tobiasmaneschijn.mcjsmod.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.context.CommandContext;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ComputerTaskQueue;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ScriptMemoryMonitor;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ScriptWatchdog;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Admin command to inspect loaded computers, e.g. /mcjs computers
+public class ComputerCommand {
+
+    private record ComputerUsage(String name, long memoryUsage, boolean busy) {
+    }
+
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(Commands.literal("mcjs")
+                .requires(source -> source.hasPermission(2))
+                .then(Commands.literal("computers").executes(ComputerCommand::listComputers)));
+    }
+
+    private static int listComputers(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+
+        // Snapshot first, usage keeps changing while we sort
+        List<ComputerUsage> computers = new ArrayList<>();
+        for (ComputerTaskQueue queue : ScriptWatchdog.getWatchedQueues()) {
+            computers.add(new ComputerUsage(queue.getName(), queue.getMemoryUsage(), queue.getRunningThread() != null));
+        }
+        computers.sort(Comparator.comparingLong(ComputerUsage::memoryUsage).reversed());
+
+        long share = ScriptMemoryMonitor.getShareBytes(computers.size());
+        source.sendSuccess(() -> Component.literal(computers.size() + " computers loaded, memory share "
+                + toKilobytes(share) + " KB each"), false);
+        if (!ScriptMemoryMonitor.isSupported()) {
+            source.sendFailure(Component.literal("Memory tracking is not supported on this JVM"));
+        }
+        for (ComputerUsage computer : computers) {
+            source.sendSuccess(() -> Component.literal(computer.name() + ": " + toKilobytes(computer.memoryUsage())
+                    + " KB" + (computer.busy() ? " (running)" : "")), false);
+        }
+        return computers.size();
+    }
+
+    private static long toKilobytes(long bytes) {
+        return bytes / 1024;
+    }
+}
@@ -0,0 +1,88 @@
+package com.tobiasmaneschijn.mcjsmod.javascript;
+
+import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Server-wide polyglot engine shared by every computer context, plus a registry of cached
+ * {@link Source}s keyed by content hash. Contexts created on the same engine reuse parsed
+ * and compiled code for identical sources, so the bootloader, the OS core and command
+ * scripts are only parsed once per server instead of once per computer.
+ */
+public class GraalEngineCache {
+    private static final int MAX_CACHED_SOURCES = 256;
+
+    private static Engine engine;
+
+    // Access-ordered so the least recently used source is dropped first
+    private static final Map<String, Source> sources = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Source> eldest) {
+            return size() > MAX_CACHED_SOURCES;
+        }
+    };
+
+    public static synchronized Engine getEngine() {
+        if (engine == null) {
+            MCJSMod.LOGGER.info("Creating shared GraalJS engine");
+            engine = Engine.newBuilder("js")
+                    .allowExperimentalOptions(true)
+                    .build();
+        }
+        return engine;
+    }
+
+    /**
+     * Returns the cached source for the given code, creating it on first use. The name is only
+     * used for stack traces; two sources with identical content share one entry.
+     */
+    public static Source getSource(String name, String code) {
+        String key = hash(code);
+        synchronized (sources) {
+            Source source = sources.get(key);
+            if (source == null) {
+                source = Source.newBuilder("js", code, name).cached(true).buildLiteral();
+                sources.put(key, source);
+            }
+            return source;
+        }
+    }
+
+    public static int getCachedSourceCount() {
+        synchronized (sources) {
+            return sources.size();
+        }
+    }
+
+    public static synchronized void close() {
+        synchronized (sources) {
+            sources.clear();
+        }
+        if (engine != null) {
+            MCJSMod.LOGGER.info("Closing shared GraalJS engine");
+            try {
+                engine.close(true);
+            } catch (Exception e) {
+                MCJSMod.LOGGER.error("Error closing shared GraalJS engine", e);
+            }
+            engine = null;
+        }
+    }
+
+    private static String hash(String code) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(code.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,46 +1,77 @@
 package com.tobiasmaneschijn.mcjsmod.javascript;
 
 import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+import com.tobiasmaneschijn.mcjsmod.javascript.binding.HostBinder;
 import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IJavascriptEngine;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ComputerEventLoop;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ComputerTaskQueue;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ExecutionLimitHandler;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ScriptScheduler;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ScriptWatchdog;
 import org.graalvm.polyglot.*;
 import org.graalvm.polyglot.io.IOAccess;
-import org.graalvm.polyglot.proxy.ProxyExecutable;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
 
 public class GraalJavascriptEngine implements IJavascriptEngine {
+    // How long the watchdog waits for a cooperative interrupt before cancelling the context
+    private static final long INTERRUPT_GRACE_MS = 500;
+    private static final Source EMPTY_OBJECT = GraalEngineCache.getSource("object.js", "({})");
+    // Scripts only reach the host through the generated proxies; host objects they are handed
+    // (file listings, byte arrays, buffers) expose their elements but no methods or fields
+    private static final HostAccess HOST_ACCESS = HostAccess.newBuilder()
+            .allowListAccess(true)
+            .allowArrayAccess(true)
+            .allowBufferAccess(true)
+            .build();
+
     private Context context;
     private String scriptContent;
     private final BlockingQueue<String> inputQueue;
     private Consumer<String> outputConsumer;
     private Consumer<String> errorConsumer;
+    private Runnable resetListener;
+    private final List<Runnable> contextClosedHooks = new CopyOnWriteArrayList<>();
     private boolean isRunning;
+    // Set while the loaded script boots the computer; the first script it starts, the OS core, is part of booting
+    private volatile boolean booting;
     private Value processInputFunction;
-    private final ExecutorService executorService;
+    private final ComputerTaskQueue taskQueue;
+    private final ComputerEventLoop eventLoop;
 
     public GraalJavascriptEngine() {
+        this("computer");
+    }
+
+    public GraalJavascriptEngine(String name) {
         this.inputQueue = new LinkedBlockingQueue<>();
         this.isRunning = false;
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.taskQueue = ScriptScheduler.createQueue(name);
+        this.taskQueue.setLimitHandler(new LimitHandler());
+        this.eventLoop = new ComputerEventLoop(taskQueue);
     }
 
     @Override
     public void initialize() {
         try {
             Context.Builder contextBuilder = Context.newBuilder("js")
-                    .allowHostAccess(HostAccess.ALL)
+                    .engine(GraalEngineCache.getEngine())
+                    .allowHostAccess(HOST_ACCESS)
                     .allowCreateThread(true)
                     .allowIO(IOAccess.NONE)
                     .allowCreateProcess(false)
                     .allowExperimentalOptions(true)
                     .option("js.ecmascript-version", "2022")
-                    .option("js.nashorn-compat", "true");
+                    .option("js.nashorn-compat", "true")
+                    // Lets host lists such as fs.listFiles() use Array.prototype methods like join
+                    .option("js.foreign-object-prototype", "true");
 
 
             context = contextBuilder.build();
@@ -53,39 +84,31 @@ public class GraalJavascriptEngine implements IJavascriptEngine {
         }
 
         // Bind Java methods to JavaScript global objects
-        context.getBindings("js").putMember("javaRead", new ProxyExecutable() {
-            @Override
-            public Object execute(Value... arguments) {
-                try {
-                    return inputQueue.take();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return null;
-                }
-            }
-        });
-
-        context.getBindings("js").putMember("javaWrite", new ProxyExecutable() {
-            @Override
-            public Object execute(Value... arguments) {
-                if (arguments.length > 0 && outputConsumer != null) {
-                    outputConsumer.accept(arguments[0].asString());
-                }
-                return null;
-            }
-        });
-
-        context.getBindings("js").putMember("javaWriteErr", new ProxyExecutable() {
-            @Override
-            public Object execute(Value... arguments) {
-                if (arguments.length > 0 && errorConsumer != null) {
-                    errorConsumer.accept(arguments[0].asString());
-                }
-                return null;
-            }
-        });
+        getGlobalBinder()
+                .stringSupplier("javaRead", () -> {
+                    if (ScriptScheduler.isTickMode()) {
+                        // Waiting here would hold up the server thread until input arrives
+                        throw new IllegalStateException("javaRead blocks and is not available in tick execution mode, use system.readLine");
+                    }
+                    try {
+                        return inputQueue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                })
+                .stringConsumer("javaWrite", text -> {
+                    if (outputConsumer != null) {
+                        outputConsumer.accept(text);
+                    }
+                })
+                .stringConsumer("javaWriteErr", text -> {
+                    if (errorConsumer != null) {
+                        errorConsumer.accept(text);
+                    }
+                });
 
-        context.eval("js", "function processInput(input) { console.log('Processing input: ' + input); }");
+        context.eval(GraalEngineCache.getSource("processInput.js", "function processInput(input) { console.log('Processing input: ' + input); }"));
         processInputFunction = context.getBindings("js").getMember("processInput");
 
         if (processInputFunction == null || !processInputFunction.canExecute()) {
@@ -100,23 +123,30 @@ public class GraalJavascriptEngine implements IJavascriptEngine {
 
     @Override
     public CompletableFuture<Void> evaluate(String code) {
+        return evaluate("eval.js", code);
+    }
+
+    @Override
+    public CompletableFuture<Void> evaluate(String name, String code) {
+        // Booting allocates about the same on every computer, so it isn't charged against its memory share
+        boolean boot = booting;
+        booting = false;
         return CompletableFuture.runAsync(() -> {
             isRunning = true;
             try {
                 MCJSMod.LOGGER.info("Evaluating code: " + code.substring(0, Math.min(code.length(), 100)) + "...");
-                Value result = context.eval("js", code);
+                Value result = context.eval(GraalEngineCache.getSource(name, code));
                 if (result.canExecute()) {
                     MCJSMod.LOGGER.info("Executing result of evaluation");
                     result.execute();
                 }
                 MCJSMod.LOGGER.info("Code evaluation completed successfully");
             } catch (PolyglotException e) {
-                MCJSMod.LOGGER.error("Error executing JavaScript: " + e.getMessage(), e);
-                errorConsumer.accept("Error executing JavaScript: " + e.getMessage());
+                handleEvaluationError(e);
             } finally {
                 isRunning = false;
             }
-        }, executorService);
+        }, boot ? taskQueue::executeUncharged : taskQueue);
     }
 
     @Override
@@ -125,29 +155,141 @@ public class GraalJavascriptEngine implements IJavascriptEngine {
             MCJSMod.LOGGER.error("No script loaded. Call loadScript() first.");
             throw new IllegalStateException("No script loaded. Call loadScript() first.");
         }
+        booting = true;
         return CompletableFuture.runAsync(() -> {
             isRunning = true;
             try {
                 MCJSMod.LOGGER.info("Executing script: " + scriptContent.substring(0, Math.min(scriptContent.length(), 100)) + "...");
-                context.eval("js", scriptContent);
+                context.eval(GraalEngineCache.getSource("script.js", scriptContent));
                 MCJSMod.LOGGER.info("Script execution completed successfully");
             } catch (PolyglotException e) {
-                MCJSMod.LOGGER.error("Error executing JavaScript script: " + e.getMessage(), e);
-                errorConsumer.accept("Error executing JavaScript: " + e.getMessage());
+                handleEvaluationError(e);
             } finally {
                 isRunning = false;
+                booting = false;
             }
-        }, executorService);
+        }, taskQueue::executeUncharged);
     }
 
 
+    private void handleEvaluationError(PolyglotException e) {
+        if (e.isInterrupted() || e.isCancelled()) {
+            // Already reported to the user by the limit handler
+            MCJSMod.LOGGER.info("JavaScript execution stopped: " + e.getMessage());
+            return;
+        }
+        MCJSMod.LOGGER.error("Error executing JavaScript: " + e.getMessage(), e);
+        if (errorConsumer != null) {
+            errorConsumer.accept("Error executing JavaScript: " + e.getMessage());
+        }
+    }
+
+    // Called from the watchdog thread when a computer goes over one of its limits
+    private class LimitHandler implements ExecutionLimitHandler {
+        @Override
+        public void onExecutionTimeout(long limitMs) {
+            Context current = context;
+            if (current == null) {
+                return;
+            }
+            // Waiting for the interrupt would hold up the watchdog for every other computer
+            ScriptWatchdog.runStopper(() -> {
+                try {
+                    current.interrupt(Duration.ofMillis(INTERRUPT_GRACE_MS));
+                } catch (TimeoutException e) {
+                    MCJSMod.LOGGER.warn("Script did not respond to interrupt, cancelling context");
+                } catch (IllegalStateException e) {
+                    // Context was closed in the meantime
+                    return;
+                }
+                // Unless the context was already replaced meanwhile. Even a clean interrupt unwinds
+                // the shell without settling the promise it awaits, so the computer reboots either way
+                if (context == current) {
+                    if (errorConsumer != null) {
+                        errorConsumer.accept("Script stopped: it exceeded the maximum execution time of " + limitMs + " ms");
+                    }
+                    resetContext();
+                }
+            });
+        }
+
+        @Override
+        public void onMemoryWarning(long usedBytes, long shareBytes) {
+            if (errorConsumer != null) {
+                errorConsumer.accept("Warning: scripts on this computer are using " + toMegabytes(usedBytes)
+                        + " MB of memory, the limit is " + toMegabytes(shareBytes) + " MB");
+            }
+        }
+
+        @Override
+        public void onMemoryExceeded(long usedBytes, long shareBytes) {
+            if (errorConsumer != null) {
+                errorConsumer.accept("Scripts on this computer used " + toMegabytes(usedBytes)
+                        + " MB of memory, more than twice the limit of " + toMegabytes(shareBytes) + " MB. Resetting");
+            }
+            Context current = context;
+            if (current == null) {
+                return;
+            }
+            // Closing the context and rebooting wait on the worker and the computer, not on the watchdog
+            ScriptWatchdog.runStopper(() -> {
+                if (context == current) {
+                    resetContext();
+                    taskQueue.resetMemoryUsage();
+                }
+            });
+        }
+    }
+
+    private static long toMegabytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    public long getMemoryUsage() {
+        return taskQueue.getMemoryUsage();
+    }
+
+    /**
+     * Forcibly closes the current context, cancelling anything running in it, and notifies the
+     * reset listener so the owner can boot a fresh one.
+     */
+    public void resetContext() {
+        isRunning = false;
+        // Pending timers hold callbacks from the old context
+        eventLoop.clearTimers();
+        runContextClosedHooks();
+        Context current = context;
+        if (current != null) {
+            try {
+                current.close(true);
+            } catch (Exception e) {
+                MCJSMod.LOGGER.error("Error cancelling JavaScript context", e);
+            }
+        }
+        if (resetListener != null) {
+            resetListener.run();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> runTask(Runnable task) {
+        return CompletableFuture.runAsync(task, eventLoop::post);
+    }
+
+    @Override
+    public ComputerEventLoop getEventLoop() {
+        return eventLoop;
+    }
+
     @Override
     public void shutdown() {
         isRunning = false;
+        eventLoop.close();
+        runContextClosedHooks();
         if (context != null) {
-            context.close();
+            // Cancel rather than wait, a worker may still be inside this context
+            context.close(true);
         }
-        executorService.shutdown();
     }
 
     @Override
@@ -160,6 +302,27 @@ public class GraalJavascriptEngine implements IJavascriptEngine {
         this.errorConsumer = errorConsumer;
     }
 
+    @Override
+    public void subscribeToReset(Runnable resetListener) {
+        this.resetListener = resetListener;
+    }
+
+    @Override
+    public void onContextClosed(Runnable hook) {
+        contextClosedHooks.add(hook);
+    }
+
+    private void runContextClosedHooks() {
+        for (Runnable hook : contextClosedHooks) {
+            try {
+                hook.run();
+            } catch (Exception e) {
+                MCJSMod.LOGGER.error("Error releasing resources of JavaScript context", e);
+            }
+        }
+        contextClosedHooks.clear();
+    }
+
     @Override
     public void provideInput(String input) {
         CompletableFuture.runAsync(() -> {
@@ -177,7 +340,7 @@ public class GraalJavascriptEngine implements IJavascriptEngine {
                     errorConsumer.accept("Error processing input: " + e.getMessage());
                 }
             }
-        }, executorService).exceptionally(throwable -> {
+        }, taskQueue).exceptionally(throwable -> {
             if (errorConsumer != null) {
                 errorConsumer.accept("Async execution error: " + throwable.getMessage());
             }
@@ -208,17 +371,19 @@ public class GraalJavascriptEngine implements IJavascriptEngine {
     }
 
     @Override
-    public void bindFunction(String name, Function<Object[], Object> function) {
-        context.getBindings("js").putMember(name, new ProxyExecutable() {
-            @Override
-            public Object execute(Value... arguments) {
-                Object[] args = new Object[arguments.length];
-                for (int i = 0; i < arguments.length; i++) {
-                    args[i] = arguments[i].as(Object.class);
-                }
-                return function.apply(args);
-            }
-        });
+    public HostBinder getGlobalBinder() {
+        return new HostBinder(context.getBindings("js"), "");
+    }
+
+    @Override
+    public HostBinder bindObject(String name) {
+        Value bindings = context.getBindings("js");
+        Value object = bindings.getMember(name);
+        if (object == null || !object.hasMembers()) {
+            object = context.eval(EMPTY_OBJECT);
+            bindings.putMember(name, object);
+        }
+        return new HostBinder(object, name);
     }
 
     @Override
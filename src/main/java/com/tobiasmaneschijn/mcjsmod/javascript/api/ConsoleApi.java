@@ -0,0 +1,31 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.api;
+
+import com.tobiasmaneschijn.mcjsmod.blockentity.ComputerBlockEntity;
+import com.tobiasmaneschijn.mcjsmod.javascript.ModJSBindings;
+import com.tobiasmaneschijn.mcjsmod.processor.JSApi;
+import com.tobiasmaneschijn.mcjsmod.processor.JSFunction;
+import org.graalvm.polyglot.Value;
+
+// The script-side 'console' object; any value is printed the way JavaScript would show it
+@JSApi("console")
+public class ConsoleApi {
+    private final ComputerBlockEntity blockEntity;
+
+    public ConsoleApi(ComputerBlockEntity blockEntity) {
+        this.blockEntity = blockEntity;
+    }
+
+    @JSFunction
+    public void log(Value message) {
+        String text = String.valueOf(message);
+        ModJSBindings.log("Console log: " + text);
+        blockEntity.handleScriptOutput(text);
+    }
+
+    @JSFunction
+    public void error(Value message) {
+        String text = String.valueOf(message);
+        ModJSBindings.log("Console error: " + text);
+        blockEntity.handleOutput("<ERROR> " + text + " </ERROR>");
+    }
+}
@@ -0,0 +1,22 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.api;
+
+import com.tobiasmaneschijn.mcjsmod.javascript.command.Coreutils;
+import com.tobiasmaneschijn.mcjsmod.processor.JSApi;
+import com.tobiasmaneschijn.mcjsmod.processor.JSFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The script-side 'coreutils' object; the shell asks it which stages to run natively through 'pipe'
+@JSApi("coreutils")
+public class CoreutilsApi {
+    @JSFunction
+    public boolean has(String name) {
+        return Coreutils.isRegistered(name);
+    }
+
+    @JSFunction
+    public List<String> list() {
+        return new ArrayList<>(Coreutils.getNames());
+    }
+}
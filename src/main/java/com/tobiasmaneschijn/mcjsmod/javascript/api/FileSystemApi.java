@@ -0,0 +1,242 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.api;
+
+import com.tobiasmaneschijn.mcjsmod.javascript.ModJSBindings;
+import com.tobiasmaneschijn.mcjsmod.javascript.binding.HostArgs;
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.DiskUsage;
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.FileStat;
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.FileSystemException;
+import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IFileSystem;
+import com.tobiasmaneschijn.mcjsmod.processor.JSApi;
+import com.tobiasmaneschijn.mcjsmod.processor.JSFunction;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The script-side 'fs' object
+@JSApi("fs")
+public class FileSystemApi {
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final IFileSystem fs;
+    // (buffer) => new ArrayBuffer(buffer), evaluated in the computer's context
+    private final Value arrayBufferFactory;
+
+    public FileSystemApi(IFileSystem fs, Value arrayBufferFactory) {
+        this.fs = fs;
+        this.arrayBufferFactory = arrayBufferFactory;
+    }
+
+    @JSFunction
+    public void createFile(String path, String content) throws FileSystemException {
+        ModJSBindings.log("Creating file: " + path + " (content length: " + content.length() + ")");
+        fs.createFile(path, content);
+    }
+
+    @JSFunction
+    public void createDirectory(String path) throws FileSystemException {
+        ModJSBindings.log("Creating directory: " + path);
+        fs.createDirectory(path);
+    }
+
+    @JSFunction
+    public String readFile(String path) throws FileSystemException {
+        ModJSBindings.log("Reading file: " + path);
+        return fs.readFile(path);
+    }
+
+    @JSFunction
+    public void writeFile(String path, String content) throws FileSystemException {
+        ModJSBindings.log("Writing file: " + path + " (content length: " + content.length() + ")");
+        fs.writeFile(path, content);
+    }
+
+    // Returns a read-only ArrayBuffer; wrap it in a typed array to read it, and copy it (e.g. with
+    // new Uint8Array(buffer).slice()) to change it. Files up to 16 KiB are a view of the stored
+    // bytes, larger ones are copied into a new buffer first
+    @JSFunction
+    public Value readBytes(String path) throws FileSystemException {
+        ModJSBindings.log("Reading bytes: " + path);
+        return arrayBufferFactory.execute(fs.readBytes(path));
+    }
+
+    // Accepts an ArrayBuffer, a typed array or a plain array of numbers
+    @JSFunction
+    public void writeBytes(String path, ByteBuffer data) throws FileSystemException {
+        ModJSBindings.log("Writing bytes: " + path + " (length: " + data.remaining() + ")");
+        fs.writeBytes(path, data);
+    }
+
+    // Streaming handles: fs.open(path, 'r' | 'w' | 'a') returns a handle for the calls below
+    @JSFunction
+    public int open(String path, String mode) throws FileSystemException {
+        ModJSBindings.log("Opening file: " + path + " (mode: " + mode + ")");
+        return fs.open(path, mode);
+    }
+
+    // Up to length bytes from the handle's position, as a read-only ArrayBuffer; empty at end of file
+    @JSFunction
+    public Value read(int handle, int length) throws FileSystemException {
+        return arrayBufferFactory.execute(fs.read(handle, length));
+    }
+
+    // Like read, but decoded as UTF-8; a character split by the length is left for the next call
+    @JSFunction
+    public String readText(int handle, int length) throws FileSystemException {
+        long start = fs.tell(handle);
+        ByteBuffer data = fs.read(handle, length);
+        int partial = incompleteUtf8Suffix(data);
+        if (partial > 0 && partial < data.remaining()) {
+            data.limit(data.limit() - partial);
+            fs.seek(handle, start + data.remaining());
+        }
+        return StandardCharsets.UTF_8.decode(data).toString();
+    }
+
+    // Position of the handle, in bytes from the start of the file
+    @JSFunction
+    public double tell(int handle) throws FileSystemException {
+        return fs.tell(handle);
+    }
+
+    // Accepts a string (written as UTF-8) or binary data
+    @JSFunction
+    public void append(int handle, Value data) throws FileSystemException {
+        if (data != null && data.isString()) {
+            fs.append(handle, ByteBuffer.wrap(data.asString().getBytes(StandardCharsets.UTF_8)));
+        } else {
+            fs.append(handle, ByteBuffer.wrap(HostArgs.bytes(data, "fs.append", 1)));
+        }
+    }
+
+    // Moves the read position; negative positions count from the end. Returns the new position
+    @JSFunction
+    public double seek(int handle, double position) throws FileSystemException {
+        return fs.seek(handle, (long) position);
+    }
+
+    @JSFunction
+    public void close(int handle) throws FileSystemException {
+        fs.close(handle);
+    }
+
+    @JSFunction
+    public void deleteFile(String path) throws FileSystemException {
+        ModJSBindings.log("Deleting file: " + path);
+        fs.deleteFile(path);
+    }
+
+    @JSFunction
+    public void deleteDirectory(String path) throws FileSystemException {
+        ModJSBindings.log("Deleting directory: " + path);
+        fs.deleteDirectory(path);
+    }
+
+    @JSFunction
+    public List<String> listFiles(String path) throws FileSystemException {
+        ModJSBindings.log("Listing files in directory: " + path);
+        return fs.listFiles(path);
+    }
+
+    // fs.list(path, {after, limit, prefix}): one page of sorted names; pass the last one as 'after' for the next
+    @JSFunction
+    public List<String> list(String path, Value options) throws FileSystemException {
+        String after = HostArgs.stringOption(options, "after", "fs.list");
+        String prefix = HostArgs.stringOption(options, "prefix", "fs.list");
+        int limit = Math.min(HostArgs.intOption(options, "limit", MAX_PAGE_SIZE, "fs.list"), MAX_PAGE_SIZE);
+        return fs.list(path, after, limit, prefix);
+    }
+
+    // fs.search(pathPrefix, {limit}): paths starting with the prefix, e.g. '/logs/2024-', or everything in '/bin/'
+    @JSFunction
+    public List<String> search(String pathPrefix, Value options) throws FileSystemException {
+        int limit = Math.min(HostArgs.intOption(options, "limit", MAX_PAGE_SIZE, "fs.search"), MAX_PAGE_SIZE);
+        return fs.search(pathPrefix, limit);
+    }
+
+    @JSFunction
+    public boolean exists(String path) {
+        return fs.exists(path);
+    }
+
+    @JSFunction
+    public boolean isDirectory(String path) {
+        return fs.isDirectory(path);
+    }
+
+    // fs.copy(from, to): a directory is copied whole, sharing everything with the original until one of them changes
+    @JSFunction
+    public void copy(String sourcePath, String destinationPath) throws FileSystemException {
+        ModJSBindings.log("Copying: " + sourcePath + " to " + destinationPath);
+        fs.copy(sourcePath, destinationPath);
+    }
+
+    // fs.snapshot(name): keeps the whole tree as it is now under that name, e.g. before running something risky
+    @JSFunction
+    public void snapshot(String name) throws FileSystemException {
+        ModJSBindings.log("Taking snapshot: " + name);
+        fs.snapshot(name);
+    }
+
+    // fs.restore(name): puts the whole tree back as it was when the snapshot was taken
+    @JSFunction
+    public void restore(String name) throws FileSystemException {
+        ModJSBindings.log("Restoring snapshot: " + name);
+        fs.restore(name);
+    }
+
+    @JSFunction
+    public void deleteSnapshot(String name) throws FileSystemException {
+        ModJSBindings.log("Deleting snapshot: " + name);
+        fs.deleteSnapshot(name);
+    }
+
+    @JSFunction
+    public List<String> snapshots() {
+        return fs.listSnapshots();
+    }
+
+    // fs.stat(path): {isDirectory, size} for a file, {isDirectory, entries} for a directory
+    @JSFunction
+    public ProxyObject stat(String path) throws FileSystemException {
+        FileStat stat = fs.stat(path);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("isDirectory", stat.isDirectory());
+        if (stat.isDirectory()) {
+            result.put("entries", stat.entries());
+        } else {
+            result.put("size", (double) stat.size());
+        }
+        return ProxyObject.fromMap(result);
+    }
+
+    // fs.df(): {used, quota, free, files}, sizes in bytes
+    @JSFunction
+    public ProxyObject df() {
+        DiskUsage usage = fs.getUsage();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("used", (double) usage.usedBytes());
+        result.put("quota", (double) usage.quotaBytes());
+        result.put("free", (double) usage.freeBytes());
+        result.put("files", (double) usage.files());
+        return ProxyObject.fromMap(result);
+    }
+
+    // Number of trailing bytes that start a UTF-8 sequence the buffer does not complete
+    private static int incompleteUtf8Suffix(ByteBuffer data) {
+        int end = data.limit();
+        for (int back = 1; back <= 3 && end - back >= data.position(); back++) {
+            int b = data.get(end - back) & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continue; // continuation byte, keep looking for the lead byte
+            }
+            int needed = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return needed > back ? back : 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,81 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.api;
+
+import com.tobiasmaneschijn.mcjsmod.blockentity.ComputerBlockEntity;
+import com.tobiasmaneschijn.mcjsmod.javascript.ModJSBindings;
+import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IJavascriptEngine;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ComputerEventLoop;
+import com.tobiasmaneschijn.mcjsmod.processor.JSApi;
+import com.tobiasmaneschijn.mcjsmod.processor.JSFunction;
+import org.graalvm.polyglot.Value;
+
+import java.util.concurrent.CompletableFuture;
+
+// Functions bound directly on the global scope: timers and the host half of system.readLine
+@JSApi("")
+public class GlobalApi {
+    private final IJavascriptEngine engine;
+    private final ComputerBlockEntity blockEntity;
+    private final ComputerEventLoop eventLoop;
+
+    public GlobalApi(IJavascriptEngine engine, ComputerBlockEntity blockEntity) {
+        this.engine = engine;
+        this.blockEntity = blockEntity;
+        this.eventLoop = engine.getEventLoop();
+    }
+
+    @JSFunction
+    public void readLineInternal(String prompt, Value resolve, Value reject) {
+        ModJSBindings.log("readLineInternal called with prompt: " + prompt);
+        try {
+            CompletableFuture<String> futureInput = blockEntity.requestInput(prompt);
+            // Settle the promise on the computer's own worker, never on the thread that supplied the input
+            futureInput.whenComplete((input, ex) -> engine.runTask(() -> {
+                if (ex != null) {
+                    reject.execute(ex.getMessage());
+                } else {
+                    resolve.execute(input);
+                }
+            }));
+        } catch (Exception e) {
+            ModJSBindings.log("Error in readLineInternal: " + e.getMessage());
+            reject.execute(e.getMessage());
+        }
+    }
+
+    // setTimeout(callback, delay, ...args)
+    @JSFunction
+    public int setTimeout(Value callback, Value delay, Value... args) {
+        return setTimer(callback, delay, args, false);
+    }
+
+    // setInterval(callback, delay, ...args)
+    @JSFunction
+    public int setInterval(Value callback, Value delay, Value... args) {
+        return setTimer(callback, delay, args, true);
+    }
+
+    @JSFunction
+    public void clearTimeout(Value id) {
+        clearTimer(id);
+    }
+
+    @JSFunction
+    public void clearInterval(Value id) {
+        clearTimer(id);
+    }
+
+    private int setTimer(Value callback, Value delay, Value[] args, boolean repeat) {
+        if (callback == null || !callback.canExecute()) {
+            throw new IllegalArgumentException((repeat ? "setInterval" : "setTimeout") + ": callback must be a function");
+        }
+        long delayMs = delay != null && delay.isNumber() ? Math.max(0, (long) delay.asDouble()) : 0;
+        Object[] callbackArgs = args;
+        return eventLoop.setTimer(() -> callback.executeVoid(callbackArgs), delayMs, repeat ? Math.max(1, delayMs) : 0);
+    }
+
+    private void clearTimer(Value id) {
+        if (id != null && id.fitsInInt()) {
+            eventLoop.clearTimer(id.asInt());
+        }
+    }
+}
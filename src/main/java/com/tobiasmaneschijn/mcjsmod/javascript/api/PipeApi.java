@@ -0,0 +1,217 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.api;
+
+import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IFileSystem;
+import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IJavascriptEngine;
+import com.tobiasmaneschijn.mcjsmod.javascript.pipeline.LineChannel;
+import com.tobiasmaneschijn.mcjsmod.javascript.pipeline.Pipelines;
+import com.tobiasmaneschijn.mcjsmod.processor.JSApi;
+import com.tobiasmaneschijn.mcjsmod.processor.JSFunction;
+import org.graalvm.polyglot.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The script-side 'pipe' object: bounded line channels between pipeline stages. Reads and
+ * writes return their result directly when they can complete right away and a promise
+ * otherwise, so a stage waiting on its neighbour yields the computer's worker instead of
+ * blocking it. Host stages use their channels directly from their own threads.
+ */
+@JSApi("pipe")
+public class PipeApi {
+    private static final int MAX_CAPACITY = 4096;
+    private static final int MAX_CHANNELS = 64;
+    private static final int MAX_NATIVE_SEGMENTS = 8;
+
+    private final IJavascriptEngine engine;
+    private final IFileSystem fs;
+    // () => [promise, resolve, reject], evaluated in the computer's context
+    private final Value deferredFactory;
+    private final Map<Integer, LineChannel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger runningSegments = new AtomicInteger();
+    private int nextChannel = 1;
+
+    public PipeApi(IJavascriptEngine engine, IFileSystem fs, Value deferredFactory) {
+        this.engine = engine;
+        this.fs = fs;
+        this.deferredFactory = deferredFactory;
+        // Unblock host stages still waiting on channels of a context that is going away
+        engine.onContextClosed(this::closeAll);
+    }
+
+    @JSFunction
+    public int open(int capacity) {
+        return register(new LineChannel(Math.min(capacity, MAX_CAPACITY)));
+    }
+
+    // true when accepted, false when the reader has gone away, or a promise of either while the channel is full
+    @JSFunction
+    public Object write(int id, String line) {
+        LineChannel channel = find(id);
+        if (channel == null) {
+            return false;
+        }
+        switch (channel.offer(line)) {
+            case ACCEPTED:
+                return true;
+            case CLOSED:
+                return false;
+            default:
+                Value deferred = deferredFactory.execute();
+                awaitWritable(channel, line, deferred.getArrayElement(1));
+                return deferred.getArrayElement(0);
+        }
+    }
+
+    // The buffered lines, null at the end of the stream, or a promise of either while nothing has arrived
+    @JSFunction
+    public Object read(int id) {
+        LineChannel channel = get(id);
+        List<String> batch = channel.poll(Pipelines.BATCH_SIZE);
+        if (batch == null) {
+            throwIfFailed(channel);
+            return null;
+        }
+        if (!batch.isEmpty()) {
+            return batch;
+        }
+        Value deferred = deferredFactory.execute();
+        awaitReadable(channel, deferred.getArrayElement(1), deferred.getArrayElement(2));
+        return deferred.getArrayElement(0);
+    }
+
+    // The writer is done; the reader still gets what is buffered
+    @JSFunction
+    public void end(int id) {
+        LineChannel channel = find(id);
+        if (channel != null) {
+            channel.closeWrite();
+        }
+    }
+
+    @JSFunction
+    public void fail(int id, String message) {
+        LineChannel channel = find(id);
+        if (channel != null) {
+            channel.fail(message);
+        }
+    }
+
+    // Closes both ends, stopping whatever feeds the channel
+    @JSFunction
+    public void close(int id) {
+        LineChannel channel = find(id);
+        if (channel != null) {
+            channels.remove(id);
+            channel.closeRead();
+            channel.closeWrite();
+        }
+    }
+
+    /**
+     * Starts host-native stages reading from the given channel (or from nothing when it is
+     * negative) and returns the channel their output arrives on.
+     */
+    @JSFunction
+    public int run(Value stages, int inputId, String workingDirectory) {
+        if (stages == null || !stages.hasArrayElements()) {
+            throw new IllegalArgumentException("pipe.run: stages must be an array of command lines");
+        }
+        List<String> commands = new ArrayList<>((int) stages.getArraySize());
+        for (long i = 0; i < stages.getArraySize(); i++) {
+            commands.add(stages.getArrayElement(i).asString());
+        }
+        LineChannel input = inputId >= 0 ? get(inputId) : null;
+        if (runningSegments.incrementAndGet() > MAX_NATIVE_SEGMENTS) {
+            runningSegments.decrementAndGet();
+            throw new IllegalStateException("Too many running pipelines");
+        }
+        LineChannel output = new LineChannel(Pipelines.BATCH_SIZE * 4);
+        int outputId;
+        try {
+            outputId = register(output);
+        } catch (RuntimeException e) {
+            runningSegments.decrementAndGet();
+            throw e;
+        }
+        try {
+            Pipelines.startNative(commands, input, output, fs, workingDirectory, runningSegments::decrementAndGet);
+        } catch (RuntimeException e) {
+            channels.remove(outputId);
+            runningSegments.decrementAndGet();
+            throw e;
+        }
+        return outputId;
+    }
+
+    private void awaitWritable(LineChannel channel, String line, Value resolve) {
+        channel.onWritable(() -> engine.runTask(() -> {
+            switch (channel.offer(line)) {
+                case ACCEPTED -> resolve.execute(true);
+                case CLOSED -> resolve.execute(false);
+                default -> awaitWritable(channel, line, resolve);
+            }
+        }));
+    }
+
+    private void awaitReadable(LineChannel channel, Value resolve, Value reject) {
+        channel.onReadable(() -> engine.runTask(() -> {
+            List<String> batch = channel.poll(Pipelines.BATCH_SIZE);
+            if (batch == null) {
+                String error = channel.getError();
+                if (error != null) {
+                    reject.execute(error);
+                } else {
+                    resolve.execute((Object) null);
+                }
+            } else if (batch.isEmpty()) {
+                awaitReadable(channel, resolve, reject);
+            } else {
+                resolve.execute(batch);
+            }
+        }));
+    }
+
+    private static void throwIfFailed(LineChannel channel) {
+        String error = channel.getError();
+        if (error != null) {
+            throw new RuntimeException(error);
+        }
+    }
+
+    private int register(LineChannel channel) {
+        if (channels.size() >= MAX_CHANNELS) {
+            throw new IllegalStateException("Too many open pipes");
+        }
+        int id = nextChannel++;
+        channels.put(id, channel);
+        return id;
+    }
+
+    private LineChannel get(int id) {
+        LineChannel channel = channels.get(id);
+        if (channel == null) {
+            throw new IllegalArgumentException("Invalid pipe: " + id);
+        }
+        return channel;
+    }
+
+    // Null for a pipe that was open but has been closed since, which a writer sees when its
+    // reader stops early; ids that were never handed out are still invalid
+    private LineChannel find(int id) {
+        LineChannel channel = channels.get(id);
+        if (channel == null && (id <= 0 || id >= nextChannel)) {
+            throw new IllegalArgumentException("Invalid pipe: " + id);
+        }
+        return channel;
+    }
+
+    private void closeAll() {
+        for (Integer id : channels.keySet()) {
+            close(id);
+        }
+    }
+}
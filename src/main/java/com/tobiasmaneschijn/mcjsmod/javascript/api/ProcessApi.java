@@ -0,0 +1,33 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.api;
+
+import com.tobiasmaneschijn.mcjsmod.javascript.ModJSBindings;
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.FileSystemException;
+import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IFileSystem;
+import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IJavascriptEngine;
+import com.tobiasmaneschijn.mcjsmod.processor.JSApi;
+import com.tobiasmaneschijn.mcjsmod.processor.JSFunction;
+
+// The script-side 'process' object
+@JSApi("process")
+public class ProcessApi {
+    private final IJavascriptEngine engine;
+    private final IFileSystem fs;
+
+    public ProcessApi(IJavascriptEngine engine, IFileSystem fs) {
+        this.engine = engine;
+        this.fs = fs;
+    }
+
+    @JSFunction
+    public void start(String scriptPath) {
+        ModJSBindings.log("Starting process: " + scriptPath);
+        String script;
+        try {
+            script = fs.readFile(scriptPath);
+        } catch (FileSystemException e) {
+            ModJSBindings.log("Failed to start process: " + e.getMessage());
+            throw new RuntimeException("Failed to start process: " + e.getMessage());
+        }
+        engine.evaluate(scriptPath, script);
+    }
+}
@@ -0,0 +1,56 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.api;
+
+import com.tobiasmaneschijn.mcjsmod.blockentity.ComputerBlockEntity;
+import com.tobiasmaneschijn.mcjsmod.javascript.ModJSBindings;
+import com.tobiasmaneschijn.mcjsmod.processor.JSApi;
+import com.tobiasmaneschijn.mcjsmod.processor.JSFunction;
+import org.graalvm.polyglot.Value;
+
+// The script-side 'system' object
+@JSApi("system")
+public class SystemApi {
+    private final ComputerBlockEntity blockEntity;
+    private final Value readLinePromise;
+
+    public SystemApi(ComputerBlockEntity blockEntity, Value readLinePromise) {
+        this.blockEntity = blockEntity;
+        this.readLinePromise = readLinePromise;
+    }
+
+    @JSFunction
+    public void clearInput() {
+        blockEntity.signalClearInput();
+    }
+
+    @JSFunction
+    public String getOsCore() {
+        return ComputerBlockEntity.getOsCoreScript();
+    }
+
+    // The shell's working directory survives hibernation and reloads
+    @JSFunction
+    public String getWorkingDirectory() {
+        return blockEntity.getWorkingDirectory();
+    }
+
+    @JSFunction
+    public void setWorkingDirectory(String path) {
+        blockEntity.setWorkingDirectory(path);
+    }
+
+    // Clear terminal by adding a bunch of newlines
+    @JSFunction
+    public void clearTerminal() {
+        blockEntity.handleOutput("\n".repeat(50));
+    }
+
+    @JSFunction
+    public Value readLine(String prompt) {
+        ModJSBindings.log("ReadLine called with prompt: " + prompt);
+        if (prompt.trim().isEmpty()) {
+            ModJSBindings.log("Empty prompt, returning null");
+            return null;
+        }
+        return readLinePromise.execute(prompt);
+    }
+}
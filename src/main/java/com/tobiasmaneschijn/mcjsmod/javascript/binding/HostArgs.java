@@ -0,0 +1,144 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.binding;
+
+import org.graalvm.polyglot.Value;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Decodes host call arguments directly from their polyglot values. A missing or mistyped
+ * argument is reported to the script as a TypeError-style message naming the function.
+ */
+public final class HostArgs {
+
+    private HostArgs() {
+    }
+
+    public static String string(Value[] args, int index, String function) {
+        Value value = get(args, index, function);
+        if (!value.isString()) {
+            throw mismatch(function, index, "a string");
+        }
+        return value.asString();
+    }
+
+    public static int int32(Value[] args, int index, String function) {
+        Value value = get(args, index, function);
+        if (!value.fitsInInt()) {
+            throw mismatch(function, index, "an integer");
+        }
+        return value.asInt();
+    }
+
+    public static double number(Value[] args, int index, String function) {
+        Value value = get(args, index, function);
+        if (!value.fitsInDouble()) {
+            throw mismatch(function, index, "a number");
+        }
+        return value.asDouble();
+    }
+
+    public static boolean bool(Value[] args, int index, String function) {
+        Value value = get(args, index, function);
+        if (!value.isBoolean()) {
+            throw mismatch(function, index, "a boolean");
+        }
+        return value.asBoolean();
+    }
+
+    /**
+     * Accepts typed arrays and ArrayBuffers (bulk copied from their buffer) as well as plain
+     * arrays of numbers.
+     */
+    public static byte[] bytes(Value[] args, int index, String function) {
+        return bytes(get(args, index, function), function, index);
+    }
+
+    // Same as above for an argument that was already taken as a raw value
+    public static byte[] bytes(Value value, String function, int index) {
+        if (value == null) {
+            throw mismatch(function, index, "a byte buffer");
+        }
+        if (value.hasBufferElements()) {
+            long size = value.getBufferSize();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(function + ": buffer is too large");
+            }
+            byte[] data = new byte[(int) size];
+            value.readBuffer(0, data, 0, data.length);
+            return data;
+        }
+        if (value.hasArrayElements()) {
+            long size = value.getArraySize();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(function + ": array is too large");
+            }
+            byte[] data = new byte[(int) size];
+            for (int i = 0; i < data.length; i++) {
+                Value element = value.getArrayElement(i);
+                if (!element.fitsInInt()) {
+                    throw mismatch(function, index, "an array of bytes");
+                }
+                data[i] = (byte) element.asInt();
+            }
+            return data;
+        }
+        throw mismatch(function, index, "a byte buffer");
+    }
+
+    // Raw value for callbacks and untyped arguments, null when the script left it out
+    public static Value value(Value[] args, int index) {
+        return index < args.length ? args[index] : null;
+    }
+
+    // An optional member of an options object; null when the object or the member is missing
+    public static String stringOption(Value options, String name, String function) {
+        Value value = option(options, name);
+        if (value == null) {
+            return null;
+        }
+        if (!value.isString()) {
+            throw new IllegalArgumentException(function + ": option '" + name + "' must be a string");
+        }
+        return value.asString();
+    }
+
+    public static int intOption(Value options, String name, int defaultValue, String function) {
+        Value value = option(options, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!value.fitsInInt()) {
+            throw new IllegalArgumentException(function + ": option '" + name + "' must be an integer");
+        }
+        return value.asInt();
+    }
+
+    private static Value option(Value options, String name) {
+        if (options == null || options.isNull() || !options.hasMembers()) {
+            return null;
+        }
+        Value value = options.getMember(name);
+        return value == null || value.isNull() ? null : value;
+    }
+
+    public static Value[] rest(Value[] args, int from) {
+        return from < args.length ? Arrays.copyOfRange(args, from, args.length) : new Value[0];
+    }
+
+    // Copies the script's bytes once into a buffer the host can keep
+    public static ByteBuffer buffer(Value[] args, int index, String function) {
+        return ByteBuffer.wrap(bytes(args, index, function));
+    }
+
+    private static Value get(Value[] args, int index, String function) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(function + ": expected at least " + (index + 1) + " argument(s), got " + args.length);
+        }
+        return args[index];
+    }
+
+    private static IllegalArgumentException mismatch(String function, int index, String expected) {
+        return new IllegalArgumentException(function + ": argument " + (index + 1) + " must be " + expected);
+    }
+}
@@ -0,0 +1,63 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.binding;
+
+import com.tobiasmaneschijn.mcjsmod.javascript.binding.HostFunctions.*;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+
+/**
+ * Registers typed host functions as members of a script object. Every method fixes the
+ * function's signature up front, so arguments are decoded with {@link HostArgs} and results
+ * are handed back as primitives, strings or arrays instead of generic host objects.
+ * Checked exceptions thrown by a function surface in the script as errors.
+ */
+public class HostBinder {
+    private final Value target;
+    private final String prefix;
+
+    public HostBinder(Value target, String name) {
+        this.target = target;
+        this.prefix = name.isEmpty() ? "" : name + ".";
+    }
+
+    public Value getTarget() {
+        return target;
+    }
+
+    // () -> string
+    public HostBinder stringSupplier(String name, StringSupplier function) {
+        return put(name, args -> function.get());
+    }
+
+    // (string) -> void
+    public HostBinder stringConsumer(String name, StringConsumer function) {
+        String qualified = prefix + name;
+        return put(name, args -> {
+            function.accept(HostArgs.string(args, 0, qualified));
+            return null;
+        });
+    }
+
+    // Escape hatch for functions that need the raw values, such as callbacks
+    public HostBinder raw(String name, ProxyExecutable function) {
+        target.putMember(name, function);
+        return this;
+    }
+
+    private HostBinder put(String name, Invoker invoker) {
+        target.putMember(name, (ProxyExecutable) args -> {
+            try {
+                return invoker.invoke(args);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        return this;
+    }
+
+    @FunctionalInterface
+    private interface Invoker {
+        Object invoke(Value[] args) throws Exception;
+    }
+}
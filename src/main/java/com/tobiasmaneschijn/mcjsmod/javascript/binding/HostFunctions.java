@@ -0,0 +1,22 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.binding;
+
+/**
+ * Explicit host function signatures. Each one maps to a single {@link HostBinder} method that
+ * decodes its arguments straight from the polyglot values, so no call goes through
+ * {@code Value.as(Object.class)} or boxes its primitives.
+ */
+public final class HostFunctions {
+
+    private HostFunctions() {
+    }
+
+    @FunctionalInterface
+    public interface StringSupplier {
+        String get() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface StringConsumer {
+        void accept(String value) throws Exception;
+    }
+}
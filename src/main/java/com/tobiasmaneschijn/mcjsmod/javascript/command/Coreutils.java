@@ -0,0 +1,409 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.command;
+
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.DiskUsage;
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.FileSystemException;
+import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IFileSystem;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Built-in shell commands that run on the host. A pipeline of them is chained as
+ * {@link LineSource}s reading straight from the computer's file system, so
+ * {@code cat big.log | grep x | wc} streams line by line instead of passing whole strings
+ * between script stages.
+ */
+public final class Coreutils {
+    private static final int LS_PAGE_SIZE = 256;
+    // sort and tail hold lines on a pipeline thread, where no computer's memory share is charged
+    private static final int MAX_BUFFERED_LINES = 100_000;
+    private static final long MAX_BUFFERED_CHARS = 4 * 1024 * 1024;
+    private static final Map<String, NativeCommand> commands = new LinkedHashMap<>();
+
+    static {
+        register("ls", Coreutils::ls);
+        register("cat", Coreutils::cat);
+        register("grep", Coreutils::grep);
+        register("wc", Coreutils::wc);
+        register("sort", Coreutils::sort);
+        register("head", Coreutils::head);
+        register("tail", Coreutils::tail);
+        register("df", Coreutils::df);
+    }
+
+    private Coreutils() {
+    }
+
+    // The file system and working directory a pipeline runs against
+    public record Context(IFileSystem fs, String workingDirectory) {
+        public String resolve(String path) {
+            return path.startsWith("/") ? path : workingDirectory + "/" + path;
+        }
+
+        LineSource open(String path) throws FileSystemException {
+            return LineSource.of(new BufferedReader(new InputStreamReader(fs.newInputStream(resolve(path)), StandardCharsets.UTF_8)));
+        }
+    }
+
+    public static void register(String name, NativeCommand command) {
+        commands.put(name, command);
+    }
+
+    public static boolean isRegistered(String name) {
+        return commands.containsKey(name);
+    }
+
+    public static Set<String> getNames() {
+        return Collections.unmodifiableSet(commands.keySet());
+    }
+
+    /**
+     * Chains the given stages (each a command line such as {@code "grep -i error"}) onto the
+     * input. Streaming stages only do work as lines are pulled from the returned source;
+     * wc, sort, tail and grep -c consume their whole input up front.
+     */
+    public static LineSource pipeline(List<String> stages, LineSource input, IFileSystem fs, String workingDirectory) throws FileSystemException {
+        Context context = new Context(fs, workingDirectory);
+        LineSource source = input;
+        for (String stage : stages) {
+            List<String> words = split(stage);
+            if (words.isEmpty()) {
+                continue;
+            }
+            NativeCommand command = commands.get(words.get(0));
+            if (command == null) {
+                throw new IllegalArgumentException("Unknown command: " + words.get(0));
+            }
+            source = command.run(words.subList(1, words.size()), source, context);
+        }
+        return source;
+    }
+
+    private static List<String> split(String stage) {
+        List<String> words = new ArrayList<>();
+        for (String word : stage.trim().split("\\s+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    // ls [dir], sorted; reads the directory a page at a time so 'ls | head' stays cheap on huge ones
+    private static LineSource ls(List<String> args, LineSource input, Context context) throws FileSystemException {
+        String dir = args.isEmpty() ? context.workingDirectory() : context.resolve(args.get(0));
+        return new LineSource() {
+            private List<String> page = context.fs().list(dir, null, LS_PAGE_SIZE, null);
+            private int index = 0;
+
+            @Override
+            public String nextLine() throws FileSystemException {
+                if (index == page.size()) {
+                    if (page.size() < LS_PAGE_SIZE) {
+                        return null;
+                    }
+                    page = context.fs().list(dir, page.get(page.size() - 1), LS_PAGE_SIZE, null);
+                    index = 0;
+                    if (page.isEmpty()) {
+                        return null;
+                    }
+                }
+                return page.get(index++);
+            }
+        };
+    }
+
+    // cat [file...], passes its input through when no files are given
+    private static LineSource cat(List<String> args, LineSource input, Context context) {
+        if (args.isEmpty()) {
+            return input;
+        }
+        Iterator<String> files = args.iterator();
+        return new LineSource() {
+            private LineSource current;
+
+            @Override
+            public String nextLine() throws FileSystemException {
+                while (true) {
+                    if (current == null) {
+                        if (!files.hasNext()) {
+                            return null;
+                        }
+                        current = context.open(files.next());
+                    }
+                    String line = current.nextLine();
+                    if (line != null) {
+                        return line;
+                    }
+                    current = null;
+                }
+            }
+        };
+    }
+
+    // grep [-i] [-v] [-n] [-c] pattern [file...], matching the pattern as plain text
+    private static LineSource grep(List<String> args, LineSource input, Context context) throws FileSystemException {
+        Options options = Options.parse(args, "ivnc", "");
+        if (options.operands.isEmpty()) {
+            throw new IllegalArgumentException("grep: missing pattern");
+        }
+        String pattern = options.operands.get(0);
+        boolean ignoreCase = options.has('i');
+        boolean invert = options.has('v');
+        boolean numbered = options.has('n');
+        LineSource source = cat(options.operands.subList(1, options.operands.size()), input, context);
+
+        LineSource matches = new LineSource() {
+            private int lineNumber = 0;
+
+            @Override
+            public String nextLine() throws FileSystemException {
+                String line;
+                while ((line = source.nextLine()) != null) {
+                    lineNumber++;
+                    if (contains(line, pattern, ignoreCase) != invert) {
+                        return numbered ? lineNumber + ":" + line : line;
+                    }
+                }
+                return null;
+            }
+        };
+        if (!options.has('c')) {
+            return matches;
+        }
+        int count = 0;
+        while (matches.nextLine() != null) {
+            count++;
+        }
+        return LineSource.of(Integer.toString(count));
+    }
+
+    private static boolean contains(String line, String pattern, boolean ignoreCase) {
+        if (!ignoreCase) {
+            return line.contains(pattern);
+        }
+        for (int i = 0, last = line.length() - pattern.length(); i <= last; i++) {
+            if (line.regionMatches(true, i, pattern, 0, pattern.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // wc [-l] [-w] [-c] [file...]; without flags prints lines, words and bytes
+    private static LineSource wc(List<String> args, LineSource input, Context context) throws FileSystemException {
+        Options options = Options.parse(args, "lwc", "");
+        LineSource source = cat(options.operands, input, context);
+        long lines = 0;
+        long words = 0;
+        long bytes = 0;
+        String line;
+        while ((line = source.nextLine()) != null) {
+            lines++;
+            words += countWords(line);
+            bytes += utf8Length(line) + 1;
+        }
+
+        boolean all = !options.has('l') && !options.has('w') && !options.has('c');
+        StringJoiner result = new StringJoiner(" ");
+        if (all || options.has('l')) {
+            result.add(Long.toString(lines));
+        }
+        if (all || options.has('w')) {
+            result.add(Long.toString(words));
+        }
+        if (all || options.has('c')) {
+            result.add(Long.toString(bytes));
+        }
+        return LineSource.of(result.toString());
+    }
+
+    private static int countWords(String line) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            boolean space = Character.isWhitespace(line.charAt(i));
+            if (!space && !inWord) {
+                words++;
+            }
+            inWord = !space;
+        }
+        return words;
+    }
+
+    private static int utf8Length(String line) {
+        int length = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    // sort [-r] [-n] [-u] [file...]; sorting has to see every line before emitting one
+    private static LineSource sort(List<String> args, LineSource input, Context context) throws FileSystemException {
+        Options options = Options.parse(args, "rnu", "");
+        LineSource source = cat(options.operands, input, context);
+        List<String> lines = new ArrayList<>();
+        long chars = 0;
+        String line;
+        while ((line = source.nextLine()) != null) {
+            lines.add(line);
+            chars += line.length();
+            checkBuffered("sort", lines.size(), chars);
+        }
+
+        Comparator<String> order = options.has('n')
+                ? Comparator.comparingDouble(Coreutils::leadingNumber).thenComparing(Comparator.naturalOrder())
+                : Comparator.naturalOrder();
+        if (options.has('r')) {
+            order = order.reversed();
+        }
+        lines.sort(order);
+        if (options.has('u')) {
+            lines = new ArrayList<>(new LinkedHashSet<>(lines));
+        }
+        Iterator<String> sorted = lines.iterator();
+        return () -> sorted.hasNext() ? sorted.next() : null;
+    }
+
+    private static void checkBuffered(String command, int lines, long chars) {
+        if (lines > MAX_BUFFERED_LINES || chars > MAX_BUFFERED_CHARS) {
+            throw new IllegalStateException(command + ": input too large, it can hold at most " + MAX_BUFFERED_LINES
+                    + " lines or " + MAX_BUFFERED_CHARS / (1024 * 1024) + "M characters");
+        }
+    }
+
+    private static double leadingNumber(String line) {
+        String trimmed = line.trim();
+        int end = 0;
+        while (end < trimmed.length() && (Character.isDigit(trimmed.charAt(end)) || "+-.".indexOf(trimmed.charAt(end)) >= 0)) {
+            end++;
+        }
+        try {
+            return Double.parseDouble(trimmed.substring(0, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // head [-n count] [file...]; stops pulling from upstream once it has enough lines
+    private static LineSource head(List<String> args, LineSource input, Context context) {
+        Options options = Options.parse(args, "", "n");
+        int limit = options.count(10);
+        LineSource source = cat(options.operands, input, context);
+        return new LineSource() {
+            private int emitted = 0;
+
+            @Override
+            public String nextLine() throws FileSystemException {
+                if (emitted >= limit) {
+                    return null;
+                }
+                String line = source.nextLine();
+                if (line != null) {
+                    emitted++;
+                }
+                return line;
+            }
+        };
+    }
+
+    // tail [-n count] [file...]; keeps only the last lines in a ring buffer
+    private static LineSource tail(List<String> args, LineSource input, Context context) throws FileSystemException {
+        Options options = Options.parse(args, "", "n");
+        int limit = options.count(10);
+        LineSource source = cat(options.operands, input, context);
+        checkBuffered("tail", limit, 0);
+        ArrayDeque<String> last = new ArrayDeque<>(Math.min(limit, 1024) + 1);
+        long chars = 0;
+        String line;
+        while ((line = source.nextLine()) != null) {
+            if (limit == 0) {
+                continue;
+            }
+            if (last.size() == limit) {
+                chars -= last.removeFirst().length();
+            }
+            last.addLast(line);
+            chars += line.length();
+            checkBuffered("tail", last.size(), chars);
+        }
+        return last::pollFirst;
+    }
+
+    // df; space taken up by the computer's files against its quota, in kilobytes
+    private static LineSource df(List<String> args, LineSource input, Context context) {
+        DiskUsage usage = context.fs().getUsage();
+        long percent = usage.quotaBytes() == 0 ? 100 : usage.usedBytes() * 100 / usage.quotaBytes();
+        return LineSource.of(String.format("%-10s %-10s %-10s %-5s %s\n%-10s %-10s %-10s %-5s %d",
+                "Size", "Used", "Free", "Use%", "Files",
+                usage.quotaBytes() / 1024 + "K", usage.usedBytes() / 1024 + "K", usage.freeBytes() / 1024 + "K",
+                percent + "%", usage.files()));
+    }
+
+    // Single-letter flags (combinable, e.g. -iv), flags that take a value, and "-20" as a count
+    private static final class Options {
+        final Set<Character> flags = new HashSet<>();
+        final Map<Character, String> values = new HashMap<>();
+        final List<String> operands = new ArrayList<>();
+
+        static Options parse(List<String> args, String flags, String valued) {
+            Options options = new Options();
+            for (int i = 0; i < args.size(); i++) {
+                String arg = args.get(i);
+                if (arg.length() < 2 || arg.charAt(0) != '-' || !options.operands.isEmpty()) {
+                    options.operands.add(arg);
+                    continue;
+                }
+                if (!valued.isEmpty() && Character.isDigit(arg.charAt(1))) {
+                    options.values.put(valued.charAt(0), arg.substring(1));
+                    continue;
+                }
+                for (int j = 1; j < arg.length(); j++) {
+                    char flag = arg.charAt(j);
+                    if (valued.indexOf(flag) >= 0) {
+                        String value = j + 1 < arg.length() ? arg.substring(j + 1) : i + 1 < args.size() ? args.get(++i) : null;
+                        if (value == null) {
+                            throw new IllegalArgumentException("Option -" + flag + " requires a value");
+                        }
+                        options.values.put(flag, value);
+                        break;
+                    }
+                    if (flags.indexOf(flag) < 0) {
+                        throw new IllegalArgumentException("Unknown option: -" + flag);
+                    }
+                    options.flags.add(flag);
+                }
+            }
+            return options;
+        }
+
+        boolean has(char flag) {
+            return flags.contains(flag);
+        }
+
+        int count(int defaultCount) {
+            String value = values.get('n');
+            if (value == null) {
+                return defaultCount;
+            }
+            try {
+                return Math.max(0, Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid line count: " + value);
+            }
+        }
+    }
+}
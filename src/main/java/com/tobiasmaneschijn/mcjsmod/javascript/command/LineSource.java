@@ -0,0 +1,49 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.command;
+
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.FileSystemException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * A pull-based stream of lines between native command stages. Stages only ask for the next
+ * line when they need it, so {@code head} stops reading early and nothing upstream is ever
+ * materialised as one big string.
+ */
+@FunctionalInterface
+public interface LineSource {
+    LineSource EMPTY = () -> null;
+
+    // The next line without its terminator, or null once the source is exhausted
+    String nextLine() throws FileSystemException;
+
+    static LineSource of(String text) {
+        return new LineSource() {
+            private int position = 0;
+
+            @Override
+            public String nextLine() {
+                if (position >= text.length()) {
+                    return null;
+                }
+                int end = text.indexOf('\n', position);
+                if (end < 0) {
+                    end = text.length();
+                }
+                String line = text.substring(position, end);
+                position = end + 1;
+                return line;
+            }
+        };
+    }
+
+    static LineSource of(BufferedReader reader) {
+        return () -> {
+            try {
+                return reader.readLine();
+            } catch (IOException e) {
+                throw new FileSystemException("Read failed: " + e.getMessage());
+            }
+        };
+    }
+}
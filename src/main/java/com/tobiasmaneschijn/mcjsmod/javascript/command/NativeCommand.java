@@ -0,0 +1,11 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.command;
+
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.FileSystemException;
+
+import java.util.List;
+
+// A shell command implemented on the host; it wraps its input stage and returns its own output
+@FunctionalInterface
+public interface NativeCommand {
+    LineSource run(List<String> args, LineSource input, Coreutils.Context context) throws FileSystemException;
+}
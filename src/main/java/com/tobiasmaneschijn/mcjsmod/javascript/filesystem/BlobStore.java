@@ -0,0 +1,84 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.filesystem;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Server-wide, content-addressed file contents. Files written whole are interned here by their
+ * SHA-256, so every computer holding the same OS core or script shares one copy, and copying
+ * such a file only takes another reference. A blob's data is never changed; a file that is
+ * opened for appending takes a private copy first. Blobs are counted per file node in a live
+ * tree and dropped from the table when the last one lets go.
+ */
+final class BlobStore {
+    private static final Map<String, Blob> blobs = new HashMap<>();
+
+    private BlobStore() {
+    }
+
+    static final class Blob {
+        final String hash;
+        final FileData data;
+        private int references;
+
+        private Blob(String hash, FileData data) {
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+
+    // Takes a reference to the blob with these contents, adding them if they are new
+    static Blob intern(FileData data) {
+        return intern(hash(data), data);
+    }
+
+    // For contents whose hash is already known, e.g. read back from disk
+    static synchronized Blob intern(String hash, FileData data) {
+        Blob blob = blobs.computeIfAbsent(hash, key -> new Blob(key, data));
+        blob.references++;
+        return blob;
+    }
+
+    // A reference to a blob that is already loaded, or null
+    static synchronized Blob acquire(String hash) {
+        Blob blob = blobs.get(hash);
+        if (blob != null) {
+            blob.references++;
+        }
+        return blob;
+    }
+
+    static synchronized Blob acquire(Blob blob) {
+        if (blob.references == 0) {
+            // Released meanwhile; put it back rather than hand out one that is not in the table
+            blobs.putIfAbsent(blob.hash, blob);
+        }
+        blob.references++;
+        return blob;
+    }
+
+    static synchronized void release(Blob blob) {
+        if (--blob.references <= 0 && blobs.get(blob.hash) == blob) {
+            blobs.remove(blob.hash);
+        }
+    }
+
+    static String hash(FileData data) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        for (long position = 0; position < data.size(); ) {
+            ByteBuffer chunk = data.read(position, FileData.CHUNK_SIZE);
+            position += chunk.remaining();
+            digest.update(chunk);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,8 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.filesystem;
+
+// Space a computer's files take up against its quota, in bytes
+public record DiskUsage(long usedBytes, long quotaBytes, long files) {
+    public long freeBytes() {
+        return Math.max(0, quotaBytes - usedBytes);
+    }
+}
@@ -0,0 +1,167 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.filesystem;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * File contents stored as fixed-size chunks, so appends and range reads touch at most the
+ * chunks involved instead of the whole file. Every chunk except the last is full and never
+ * written again, and the last one is only ever extended past the current size, so buffers
+ * handed out by {@link #read} stay valid while the file keeps growing. Each file locks on
+ * itself, so reading one while another thread appends to it is safe and other files are
+ * not held up.
+ */
+class FileData {
+    static final int CHUNK_SIZE = 16 * 1024;
+    private static final int MIN_TAIL_CAPACITY = 64;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final ArrayList<byte[]> chunks;
+    private long size;
+
+    FileData() {
+        this.chunks = new ArrayList<>();
+    }
+
+    private FileData(ArrayList<byte[]> chunks, long size) {
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    // Takes ownership of the buffer; a small heap buffer becomes the only chunk without a copy
+    static FileData of(ByteBuffer data) {
+        FileData file = new FileData();
+        if (data.hasArray() && !data.isReadOnly() && data.arrayOffset() == 0 && data.position() == 0
+                && data.hasRemaining() && data.array().length <= CHUNK_SIZE) {
+            file.chunks.add(data.array());
+            file.size = data.remaining();
+            return file;
+        }
+        file.append(data);
+        return file;
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized void append(ByteBuffer data) {
+        ByteBuffer source = data.duplicate();
+        while (source.hasRemaining()) {
+            int offset = (int) (size % CHUNK_SIZE);
+            byte[] tail;
+            if (offset == 0) {
+                tail = new byte[Math.min(CHUNK_SIZE, Math.max(MIN_TAIL_CAPACITY, source.remaining()))];
+                chunks.add(tail);
+            } else {
+                tail = chunks.get(chunks.size() - 1);
+                if (tail.length < CHUNK_SIZE && tail.length - offset < source.remaining()) {
+                    // Grow the tail into a new array; buffers already handed out keep the old one
+                    int capacity = (int) Math.min(CHUNK_SIZE, Math.max(tail.length * 2L, (long) offset + source.remaining()));
+                    tail = Arrays.copyOf(tail, capacity);
+                    chunks.set(chunks.size() - 1, tail);
+                }
+            }
+            int count = Math.min(source.remaining(), tail.length - offset);
+            source.get(tail, offset, count);
+            size += count;
+        }
+    }
+
+    /**
+     * Returns a read-only buffer with up to {@code length} bytes starting at {@code position}.
+     * Ranges inside a single chunk are a view of the stored bytes; longer ones are copied.
+     */
+    synchronized ByteBuffer read(long position, int length) {
+        if (position >= size || length <= 0) {
+            return EMPTY;
+        }
+        int count = (int) Math.min(length, size - position);
+        int index = (int) (position / CHUNK_SIZE);
+        int offset = (int) (position % CHUNK_SIZE);
+        if (offset + count <= CHUNK_SIZE) {
+            return ByteBuffer.wrap(chunks.get(index), offset, count).slice().asReadOnlyBuffer();
+        }
+
+        byte[] out = new byte[count];
+        int copied = 0;
+        while (copied < count) {
+            int n = Math.min(count - copied, CHUNK_SIZE - offset);
+            System.arraycopy(chunks.get(index++), offset, out, copied, n);
+            copied += n;
+            offset = 0;
+        }
+        return ByteBuffer.wrap(out).asReadOnlyBuffer();
+    }
+
+    // The whole contents as a read-only buffer; like read, only a view when they fit in one chunk
+    synchronized ByteBuffer readAll() {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("File is too large to read at once: " + size + " bytes");
+        }
+        return read(0, (int) size);
+    }
+
+    byte[] toByteArray() {
+        ByteBuffer all = readAll();
+        byte[] bytes = new byte[all.remaining()];
+        all.get(bytes);
+        return bytes;
+    }
+
+    // Streams the contents as of now straight out of the chunks, without assembling the file
+    InputStream inputStream() {
+        List<byte[]> snapshot;
+        long length;
+        synchronized (this) {
+            snapshot = new ArrayList<>(chunks);
+            length = size;
+        }
+        return new InputStream() {
+            private long position = 0;
+
+            @Override
+            public int read() {
+                if (position >= length) {
+                    return -1;
+                }
+                byte b = snapshot.get((int) (position / CHUNK_SIZE))[(int) (position % CHUNK_SIZE)];
+                position++;
+                return b & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) {
+                if (count == 0) {
+                    return 0;
+                }
+                if (position >= length) {
+                    return -1;
+                }
+                int chunkOffset = (int) (position % CHUNK_SIZE);
+                int n = (int) Math.min(Math.min(count, CHUNK_SIZE - chunkOffset), length - position);
+                System.arraycopy(snapshot.get((int) (position / CHUNK_SIZE)), chunkOffset, buffer, offset, n);
+                position += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, length - position);
+            }
+        };
+    }
+
+    // Full chunks are shared; the tail is copied because both files may append to it
+    synchronized FileData copy() {
+        ArrayList<byte[]> copied = new ArrayList<>(chunks);
+        if (size % CHUNK_SIZE != 0) {
+            int last = copied.size() - 1;
+            copied.set(last, copied.get(last).clone());
+        }
+        return new FileData(copied, size);
+    }
+}
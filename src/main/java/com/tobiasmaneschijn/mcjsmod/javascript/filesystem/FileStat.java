@@ -0,0 +1,5 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.filesystem;
+
+// A file's size in bytes, or for a directory the number of entries in it
+public record FileStat(boolean isDirectory, long size, int entries) {
+}
@@ -4,4 +4,8 @@ public class FileSystemException extends Exception {
     public FileSystemException(String message) {
         super(message);
     }
+
+    public FileSystemException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,398 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.filesystem;
+
+import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A computer's file system on disk, under {@code <world>/mcjsmod/computers/<id>/}. The tree
+ * (names, directories and file ids) lives in a small binary index and every file's bytes in
+ * their own blob, so a save only rewrites the files that changed and the index only when
+ * the tree itself changed. Both are replaced atomically through a temporary file.
+ * Contents interned in the {@link BlobStore} are written once, by hash, to
+ * {@code <world>/mcjsmod/blobs/} and shared by every computer that has them.
+ * Contents of more than a few hundred bytes are stored gzipped when that makes them smaller.
+ * Anything that starts with the gzip magic is always wrapped, so a blob is compressed exactly
+ * when it starts with it. Writes run on a single background thread, so they reach the disk in
+ * the order they were queued and never hold up the server thread.
+ */
+public class FileSystemStore {
+    private static final String COMPUTER_DIRECTORY = "computers";
+    private static final String SHARED_DIRECTORY = "blobs";
+    private static final String INDEX_FILE = "index.bin";
+    private static final String BLOB_DIRECTORY = "blobs";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+    private static final int COMPRESSION_THRESHOLD = 512;
+    // Compressed contents are only kept if they shrink at least this much, so not for images or archives
+    private static final double MAX_COMPRESSED_RATIO = 0.9;
+    private static final int GZIP_MAGIC_FIRST = 0x1f;
+    private static final int GZIP_MAGIC_SECOND = 0x8b;
+
+    // <world>/mcjsmod while a server is running; null on clients
+    private static volatile Path baseDirectory;
+    private static ExecutorService writer;
+    // The last queued write of each store, so a store being loaded again can wait for it
+    private static final Map<String, CompletableFuture<Void>> pendingWrites = new ConcurrentHashMap<>();
+    // Store id -> the file system using it. A computer copied along with its data, e.g. by
+    // pick-block or /clone, comes with the same id and must not write into the original's store
+    private static final Map<String, Object> claims = new ConcurrentHashMap<>();
+
+    private final String id;
+    private final Path directory;
+
+    private FileSystemStore(String id, Path directory) {
+        this.id = id;
+        this.directory = directory;
+    }
+
+    public static void setBaseDirectory(Path directory) {
+        baseDirectory = directory;
+        claims.clear();
+    }
+
+    // False if another file system already uses the store; claiming it again is fine
+    static boolean claim(String id, Object owner) {
+        Object holder = claims.putIfAbsent(id, owner);
+        return holder == null || holder == owner;
+    }
+
+    static void unclaim(String id, Object owner) {
+        claims.remove(id, owner);
+    }
+
+    // Null when there is no world to store into
+    static FileSystemStore open(String id) {
+        Path base = baseDirectory;
+        return base == null ? null : new FileSystemStore(id, base.resolve(COMPUTER_DIRECTORY).resolve(id));
+    }
+
+    /**
+     * Queues a sweep of shared blobs that no computer's index refers to any more. Run when a
+     * world is opened, before any computer has been saved; the sweep is skipped entirely if
+     * any index can't be read, so nothing still in use is ever removed.
+     */
+    public static void collectGarbage() {
+        Path base = baseDirectory;
+        if (base == null || !Files.isDirectory(base.resolve(SHARED_DIRECTORY))) {
+            return;
+        }
+        getWriter().execute(() -> {
+            try {
+                Set<String> referenced = readSharedReferences(base);
+                int removed = 0;
+                try (DirectoryStream<Path> buckets = Files.newDirectoryStream(base.resolve(SHARED_DIRECTORY))) {
+                    for (Path bucket : buckets) {
+                        try (DirectoryStream<Path> blobs = Files.newDirectoryStream(bucket)) {
+                            for (Path blob : blobs) {
+                                if (!referenced.contains(blob.getFileName().toString())) {
+                                    Files.deleteIfExists(blob);
+                                    removed++;
+                                }
+                            }
+                        }
+                    }
+                }
+                if (removed > 0) {
+                    MCJSMod.LOGGER.info("Removed " + removed + " unused shared file blobs");
+                }
+            } catch (IOException e) {
+                MCJSMod.LOGGER.error("Skipped cleaning up shared file blobs", e);
+            }
+        });
+    }
+
+    // The hashes of every shared blob any computer's index refers to
+    private static Set<String> readSharedReferences(Path base) throws IOException {
+        Set<String> referenced = new HashSet<>();
+        Path computers = base.resolve(COMPUTER_DIRECTORY);
+        if (Files.isDirectory(computers)) {
+            try (DirectoryStream<Path> stores = Files.newDirectoryStream(computers)) {
+                for (Path store : stores) {
+                    Path index = store.resolve(INDEX_FILE);
+                    if (Files.isRegularFile(index)) {
+                        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+                            VirtualFileSystem.readSharedReferences(in, referenced);
+                        }
+                    }
+                }
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * Deletes those of the given shared blobs that no computer's index refers to any more, e.g.
+     * once a deleted snapshot's index is written. Only called on the I/O thread, after this
+     * store's index; contents that are only in memory so far are written by their own save.
+     */
+    void deleteUnreferencedSharedBlobs(Set<String> hashes) {
+        try {
+            Set<String> referenced = readSharedReferences(directory.getParent().getParent());
+            for (String hash : hashes) {
+                if (!referenced.contains(hash)) {
+                    Files.deleteIfExists(sharedBlob(hash));
+                }
+            }
+        } catch (IOException e) {
+            // Left for the sweep when the world is next opened
+            MCJSMod.LOGGER.error("Skipped cleaning up shared file blobs of file system " + id, e);
+        }
+    }
+
+    private static synchronized ExecutorService getWriter() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "MCJS-FileSystem-IO");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return writer;
+    }
+
+    // Finishes every queued write; called once the server has saved for the last time
+    public static synchronized void shutdown() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                MCJSMod.LOGGER.error("Timed out waiting for computer file systems to be written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    @FunctionalInterface
+    interface Write {
+        void run(FileSystemStore store) throws IOException;
+    }
+
+    // Queues a write on the I/O thread; onFailure runs there too if it throws
+    void writeLater(Write write, Consumer<IOException> onFailure) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        pendingWrites.put(id, done);
+        getWriter().execute(() -> {
+            try {
+                write.run(this);
+            } catch (IOException e) {
+                onFailure.accept(e);
+            } catch (RuntimeException e) {
+                onFailure.accept(new IOException(e));
+            } finally {
+                done.complete(null);
+                pendingWrites.remove(id, done);
+            }
+        });
+    }
+
+    /**
+     * A copy of this store under a new id. The copy is made on the I/O thread, so it has
+     * everything queued for this store so far and nothing queued after; the returned future
+     * completes once it is there to read from.
+     */
+    CompletableFuture<Void> fork(String forkId) {
+        FileSystemStore fork = new FileSystemStore(forkId, directory.resolveSibling(forkId));
+        CompletableFuture<Void> copied = new CompletableFuture<>();
+        fork.writeLater(target -> {
+            try {
+                copyDirectory(directory, target.directory);
+            } finally {
+                copied.complete(null);
+            }
+        }, e -> MCJSMod.LOGGER.error("Failed to copy file store " + id + " to " + forkId, e));
+        return copied;
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        if (!Files.isDirectory(source)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path copy = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(copy);
+                } else if (!path.getFileName().toString().endsWith(".tmp")) {
+                    Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    // Removes the whole store once everything queued for it so far has been written
+    void deleteLater() {
+        writeLater(store -> {
+            if (!Files.isDirectory(store.directory)) {
+                return;
+            }
+            try (Stream<Path> paths = Files.walk(store.directory)) {
+                // Deepest first, so every directory is empty by the time it is removed
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }, e -> MCJSMod.LOGGER.error("Failed to delete file store " + id, e));
+    }
+
+    // Blocks until writes queued for this store have reached the disk
+    void awaitWrites() {
+        CompletableFuture<Void> pending = pendingWrites.get(id);
+        if (pending != null) {
+            pending.join();
+        }
+    }
+
+    @FunctionalInterface
+    interface IndexWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    boolean hasIndex() {
+        return Files.isRegularFile(directory.resolve(INDEX_FILE));
+    }
+
+    DataInputStream openIndex() throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(INDEX_FILE))));
+    }
+
+    void writeIndex(IndexWriter writer) throws IOException {
+        Path target = directory.resolve(INDEX_FILE);
+        Path temp = temporary(target);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            writer.write(out);
+        }
+        replace(temp, target);
+    }
+
+    FileData readBlob(long id) throws IOException {
+        Path blob = blob(id);
+        if (!Files.exists(blob)) {
+            throw new IOException("Missing contents for file " + id);
+        }
+        return read(blob);
+    }
+
+    void writeBlob(long id, FileData data) throws IOException {
+        write(blob(id), data);
+    }
+
+    void deleteBlob(long id) throws IOException {
+        Files.deleteIfExists(blob(id));
+    }
+
+    FileData readSharedBlob(String hash) throws IOException {
+        Path blob = sharedBlob(hash);
+        if (!Files.exists(blob)) {
+            throw new IOException("Missing shared contents " + hash);
+        }
+        return read(blob);
+    }
+
+    // Content-addressed, so a blob that is already there never needs writing again
+    void writeSharedBlob(String hash, FileData data) throws IOException {
+        Path target = sharedBlob(hash);
+        if (!Files.exists(target)) {
+            write(target, data);
+        }
+    }
+
+    private static FileData read(Path blob) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(blob), FileData.CHUNK_SIZE)) {
+            in.mark(2);
+            boolean compressed = in.read() == GZIP_MAGIC_FIRST && in.read() == GZIP_MAGIC_SECOND;
+            in.reset();
+            InputStream source = compressed ? new GZIPInputStream(in, FileData.CHUNK_SIZE) : in;
+            // Straight into chunks, without the whole file in one array first
+            FileData data = new FileData();
+            byte[] buffer = new byte[FileData.CHUNK_SIZE];
+            int read;
+            while ((read = source.readNBytes(buffer, 0, buffer.length)) > 0) {
+                data.append(ByteBuffer.wrap(buffer, 0, read));
+            }
+            return data;
+        }
+    }
+
+    private static void write(Path target, FileData data) throws IOException {
+        Path temp = temporary(target);
+        boolean looksCompressed = startsWithGzipMagic(data);
+        if (looksCompressed || data.size() >= COMPRESSION_THRESHOLD) {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), FileData.CHUNK_SIZE)) {
+                data.inputStream().transferTo(out);
+            }
+            if (looksCompressed || Files.size(temp) <= data.size() * MAX_COMPRESSED_RATIO) {
+                replace(temp, target);
+                return;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Chunk-sized reads are views of the stored chunks, so nothing is assembled in memory
+            for (long position = 0; position < data.size(); ) {
+                ByteBuffer chunk = data.read(position, FileData.CHUNK_SIZE);
+                position += chunk.remaining();
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            }
+        }
+        replace(temp, target);
+    }
+
+    private static boolean startsWithGzipMagic(FileData data) {
+        ByteBuffer start = data.read(0, 2);
+        return start.remaining() == 2 && (start.get(0) & 0xff) == GZIP_MAGIC_FIRST && (start.get(1) & 0xff) == GZIP_MAGIC_SECOND;
+    }
+
+    private Path blob(long id) {
+        return directory.resolve(BLOB_DIRECTORY).resolve(Long.toHexString(id));
+    }
+
+    // Spread over 256 buckets by the first byte of the hash
+    private Path sharedBlob(String hash) {
+        return directory.getParent().getParent().resolve(SHARED_DIRECTORY).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static Path temporary(Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
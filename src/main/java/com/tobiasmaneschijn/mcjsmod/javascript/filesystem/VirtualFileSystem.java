@@ -6,127 +6,611 @@ import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IFileSystem;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.Tag;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 
 public class VirtualFileSystem implements IFileSystem {
-    private VirtualFile root;
+    private static final int MAX_OPEN_HANDLES = 64;
+    private static final int INDEX_MAGIC = 0x4D434653; // "MCFS"
+    // 4 added named snapshots, 3 file sizes and 2 shared contents; older ones are still read
+    private static final int INDEX_FORMAT = 4;
+    private static final int PATH_CACHE_SIZE = 1024;
+    private static final long RESIDENT_CONTENTS_LIMIT = 1 << 20;
+    // Every entry counts as at least this much, so empty files and directories aren't free
+    private static final long MIN_ENTRY_BYTES = 256;
+    private static final int MAX_NAMED_SNAPSHOTS = 8;
+
+    // Changes synchronize on the file system, one at a time. Reads take no lock: directories are
+    // concurrent sorted maps, and the tree, inode table, path cache and the node fields reads
+    // use are all safely published, so any number of processes, native commands and the save
+    // thread can read while a change is made. A read sees each node as before or after it.
+    private volatile VirtualFile root;
     private static final Gson GSON = new Gson();
+    private final Map<Integer, FileHandle> handles = new ConcurrentHashMap<>();
+    private int nextHandle = 1;
 
-    public VirtualFileSystem() {
-        this.root = new VirtualFile("", true);
+    // Persistence: files are written to the store by id, and only when they changed since the last save
+    // Read without the lock by loads of contents that aren't resident
+    private volatile String storeId;
+    // Set while a copy of the store this was loaded from is still being made under storeId
+    private volatile CompletableFuture<Void> storeCopied;
+    private long storeVersion;
+    private long nextFileId = 1;
+    private Set<Long> dirtyFiles = new HashSet<>();
+    private Set<Long> deletedFiles = new HashSet<>();
+    private boolean treeDirty;
+    // Set once the tree's shared blobs have been let go, when the computer is unloaded
+    private boolean released;
+
+    // Copy-on-write: a save freezes the tree as it is by moving on to a new generation. Nodes from
+    // an older generation may be shared with a snapshot that is still being written, so they are
+    // copied, along with the path leading to them, before they change.
+    private long generation;
+
+    // A copied directory is not copied at all: the same frozen node is put in a second place, and
+    // a node is only in its own place if its parentId is that directory's directoryId and its
+    // name the entry's. Ids survive copy-on-write but are new for the copy a shared node gets
+    // once it changes, which leaves its children shared in turn. Only nodes in their own place
+    // have an inode, are cached by path and hold blob references; files that are shared are
+    // always interned, so their contents never depend on the store id.
+    private long nextDirectoryId = 1;
+
+    // fs.snapshot(): whole trees by name, sharing every node that hasn't changed since
+    private final Map<String, VirtualFile> namedSnapshots = new TreeMap<>();
+    // Deleted since the last save; their shared blobs are removed once the index no longer has them
+    private List<VirtualFile> deletedSnapshots = new ArrayList<>();
+
+    // Every node in the live tree by inode number, so a cached path resolves without walking.
+    // Inode numbers are only meaningful while loaded and are reused, unlike the store ids.
+    // Grown by replacing the array, so a reader always sees a whole one.
+    private volatile AtomicReferenceArray<VirtualFile> inodes = new AtomicReferenceArray<>(64);
+    private int inodeCount;
+    private final ArrayDeque<Integer> freeInodes = new ArrayDeque<>();
+    // Normalised path -> inode. Entries from an older epoch are stale: anything that removes or
+    // renames a path moves to a new epoch instead of finding the entries it affects. Readers
+    // fill it too, so it is simply emptied when it grows past its size. The epoch is odd while
+    // the whole tree is being replaced, and nothing is cached then.
+    private final Map<String, CachedPath> pathCache = new ConcurrentHashMap<>();
+    private volatile long pathEpoch;
+
+    private record CachedPath(int inode, long epoch) {
     }
 
-    private String normalizePath(String path) {
-        // Replace backslashes with forward slashes for consistency
-        path = path.replace("\\", "/");
+    private record SubtreeUsage(long bytes, long files, long privateFiles) {
+    }
 
-        // Handle current directory
-        path = path.replaceAll("^\\./", "").replaceAll("/\\./", "/");
+    // Contents are only read from the store when first used. Loaded contents are tracked here,
+    // inode -> bytes, least recently used first, and those that are safely on disk are dropped
+    // again once they add up to more than the limit. Guarded by its own lock, since reads
+    // reorder it; only changes, which hold the file system's lock too, drop anything.
+    private final LinkedHashMap<Integer, Long> residentFiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long residentBytes;
+    // What the last trim couldn't drop because it was unsaved or open. Reads only trim again
+    // once more than that is loaded, instead of all queueing for the lock to free nothing
+    private long pinnedBytes;
+    // Saves still being written; their files must stay loaded until they are on disk
+    private final List<Snapshot> pendingSnapshots = new ArrayList<>();
 
-        // Remove trailing slash
-        if (path.endsWith("/") && !path.equals("/")) {
-            path = path.substring(0, path.length() - 1);
-        }
+    // Usage of the live tree, counted as nodes are registered and files change size
+    private long usedBytes;
+    private long fileCount;
+    private long quota = Long.MAX_VALUE;
 
-        // Handle empty path or just "."
-        if (path.isEmpty() || path.equals(".")) {
-            return "/";
+    public VirtualFileSystem() {
+        this.root = new VirtualFile("", true, 0);
+        register(root);
+    }
+
+    // Single pass, and no allocation at all for a path that is already normalised. Every "." and
+    // empty segment goes, including a trailing "/." or "//" the old regex version used to keep
+    static String normalizePath(String path) {
+        if (isNormalized(path)) {
+            return path;
+        }
+        StringBuilder normalized = new StringBuilder(path.length() + 1);
+        int length = path.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && isSeparator(path.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !isSeparator(path.charAt(i))) {
+                i++;
+            }
+            // Empty and "." segments are dropped; ".." is left to the caller, as before
+            if (i > start && !(i - start == 1 && path.charAt(start) == '.')) {
+                normalized.append('/').append(path, start, i);
+            }
         }
+        return normalized.length() == 0 ? "/" : normalized.toString();
+    }
 
-        // Ensure the path starts with a slash
-        if (!path.startsWith("/")) {
-            path = "/" + path;
+    private static boolean isNormalized(String path) {
+        int length = path.length();
+        if (length == 0 || path.charAt(0) != '/') {
+            return false;
+        }
+        int segmentStart = 1;
+        for (int i = 1; i <= length && length > 1; i++) {
+            char c = i < length ? path.charAt(i) : '/';
+            if (c == '\\') {
+                return false;
+            }
+            if (c == '/') {
+                int segmentLength = i - segmentStart;
+                if (segmentLength == 0 || (segmentLength == 1 && path.charAt(segmentStart) == '.')) {
+                    return false;
+                }
+                segmentStart = i + 1;
+            }
         }
+        return true;
+    }
 
-        // Remove any double slashes
-        path = path.replaceAll("//+", "/");
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '\\';
+    }
 
-        return path;
+    // Both take a normalised path
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash <= 0 ? "/" : path.substring(0, slash);
+    }
+
+    private static String nameOf(String path) throws FileSystemException {
+        if (path.equals("/")) {
+            throw new FileSystemException("Invalid path: /");
+        }
+        return path.substring(path.lastIndexOf('/') + 1);
     }
 
     @Override
-    public void createFile(String path, String content) throws FileSystemException {
+    public synchronized void createFile(String path, String content) throws FileSystemException {
         path = normalizePath(path);
         MCJSMod.LOGGER.info("Creating file: " + path);
-        String[] parts = path.split("/");
-        VirtualFile parent = navigateToParent(parts);
-        String fileName = parts[parts.length - 1];
+        VirtualFile parent = mutableParent(path);
+        String fileName = nameOf(path);
         if (parent.children.containsKey(fileName)) {
             throw new FileSystemException("File already exists: " + path);
         }
 
-        parent.children.put(fileName, new VirtualFile(fileName, false, content));
+        FileData data = FileData.of(encode(content));
+        reserve(charge(data.size()), path);
+        VirtualFile file = new VirtualFile(fileName, data, generation);
+        share(file);
+        created(file);
+        attach(parent, fileName, file);
     }
 
     @Override
-    public void createDirectory(String path) throws FileSystemException {
+    public synchronized void createDirectory(String path) throws FileSystemException {
         path = normalizePath(path);
         MCJSMod.LOGGER.info("Creating directory: " + path);
-        String[] parts = path.split("/");
-        VirtualFile parent = navigateToParent(parts);
-        String dirName = parts[parts.length - 1];
+        VirtualFile parent = mutableParent(path);
+        String dirName = nameOf(path);
         if (parent.children.containsKey(dirName)) {
             throw new FileSystemException("Directory already exists: " + path);
         }
-        parent.children.put(dirName, new VirtualFile(dirName, true));
+        reserve(MIN_ENTRY_BYTES, path);
+        attach(parent, dirName, new VirtualFile(dirName, true, generation));
+        treeDirty = true;
     }
 
     @Override
     public String readFile(String path) throws FileSystemException {
         path = normalizePath(path);
-        MCJSMod.LOGGER.info("Reading file: " + path);
+        MCJSMod.LOGGER.debug("Reading file: {}", path);
         VirtualFile file = getFile(path);
         if (file.isDirectory) {
             throw new FileSystemException("Cannot read directory: " + path);
         }
-        return file.content;
+        return StandardCharsets.UTF_8.decode(contents(file).readAll()).toString();
+    }
+
+    @Override
+    public ByteBuffer readBytes(String path) throws FileSystemException {
+        path = normalizePath(path);
+        VirtualFile file = getFile(path);
+        if (file.isDirectory) {
+            throw new FileSystemException("Cannot read directory: " + path);
+        }
+        return contents(file).readAll();
+    }
+
+    @Override
+    public InputStream newInputStream(String path) throws FileSystemException {
+        path = normalizePath(path);
+        VirtualFile file = getFile(path);
+        if (file.isDirectory) {
+            throw new FileSystemException("Cannot read directory: " + path);
+        }
+        return contents(file).inputStream();
     }
 
     @Override
     public void writeFile(String path, String content) throws FileSystemException {
+        writeBytes(path, encode(content));
+    }
+
+    @Override
+    public synchronized void writeBytes(String path, ByteBuffer data) throws FileSystemException {
         path = normalizePath(path);
         MCJSMod.LOGGER.info("Writing file: " + path);
-        createParentDirectories(path);
-        String[] parts = path.split("/");
-        VirtualFile parent = navigateToParent(parts);
-        String fileName = parts[parts.length - 1];
+        if (lookup(path) == null) {
+            // Missing parents count too, and none are created unless the whole write fits
+            reserve(charge(data.remaining()) + missingDirectories(parentOf(path)) * MIN_ENTRY_BYTES, path);
+        }
+        VirtualFile parent = createParentDirectories(path);
+        String fileName = nameOf(path);
         if (parent.children.containsKey(fileName)) {
             if (parent.children.get(fileName).isDirectory) {
                 throw new FileSystemException("Cannot write to a directory: " + path);
             }
-            parent.children.get(fileName).content = content;
+            long growth = charge(data.remaining()) - charge(parent.children.get(fileName));
+            reserve(growth, path);
+            VirtualFile file = mutableChild(parent, fileName);
+            BlobStore.Blob previous = file.blob;
+            file.data = FileData.of(data);
+            file.size = file.data.size();
+            file.blob = null;
+            file.hash = null;
+            usedBytes += growth;
+            // A handle still appending to it needs contents of its own
+            if (!isOpenForWriting(file)) {
+                share(file);
+            }
+            if (previous != null) {
+                BlobStore.release(previous);
+            }
+            dirtyFiles.add(file.id);
+            // The index records which blob, if any, holds the contents
+            treeDirty = true;
+            touch(file);
         } else {
-            parent.children.put(fileName, new VirtualFile(fileName, false, content));
+            reserve(charge(data.remaining()), path);
+            VirtualFile file = new VirtualFile(fileName, FileData.of(data), generation);
+            share(file);
+            created(file);
+            attach(parent, fileName, file);
         }
     }
 
-    private void createParentDirectories(String path) throws FileSystemException {
-        String[] parts = normalizePath(path).split("/");
-        VirtualFile current = root;
-        for (int i = 1; i < parts.length - 1; i++) {
-            String part = parts[i];
-            if (!current.children.containsKey(part)) {
-                MCJSMod.LOGGER.info("Creating directory: " + part);
-                current.children.put(part, new VirtualFile(part, true));
+    @Override
+    public synchronized int open(String path, String mode) throws FileSystemException {
+        path = normalizePath(path);
+        if (handles.size() >= MAX_OPEN_HANDLES) {
+            throw new FileSystemException("Too many open files");
+        }
+        boolean writable;
+        switch (mode) {
+            case "r" -> writable = false;
+            case "w" -> {
+                writeBytes(path, ByteBuffer.allocate(0));
+                writable = true;
             }
-            current = current.children.get(part);
-            if (!current.isDirectory) {
-                throw new FileSystemException("Path component is not a directory: " + part);
+            case "a" -> {
+                if (!exists(path)) {
+                    writeBytes(path, ByteBuffer.allocate(0));
+                }
+                writable = true;
+            }
+            default -> throw new FileSystemException("Invalid open mode: " + mode);
+        }
+        VirtualFile file = getFile(path);
+        if (file.isDirectory) {
+            throw new FileSystemException("Cannot open directory: " + path);
+        }
+        if (writable) {
+            // Appends change the file in place, so it must not be shared with a snapshot being written
+            file = mutableChild(mutableParent(path), nameOf(path));
+            unshare(file);
+        } else if (!ownsPath(path)) {
+            // Handles follow their file when it is copied, which only works for one in its own place
+            file = mutableChild(mutableParent(path), nameOf(path));
+        }
+        // Appending handles start at the end, like O_APPEND
+        long position = mode.equals("a") ? contents(file).size() : 0;
+        int handle = nextHandle++;
+        handles.put(handle, new FileHandle(file, writable, position));
+        return handle;
+    }
+
+    @Override
+    public ByteBuffer read(int handle, int length) throws FileSystemException {
+        FileHandle fileHandle = getHandle(handle);
+        ByteBuffer data = contents(fileHandle.file).read(fileHandle.position, length);
+        fileHandle.position += data.remaining();
+        return data;
+    }
+
+    @Override
+    public synchronized void append(int handle, ByteBuffer data) throws FileSystemException {
+        FileHandle fileHandle = getHandle(handle);
+        if (!fileHandle.writable) {
+            throw new FileSystemException("File handle is read-only: " + handle);
+        }
+        VirtualFile file = fileHandle.file;
+        long growth = charge(file.size + data.remaining()) - charge(file);
+        reserve(growth, file.name);
+        // Snapshots taken while the handle is open hold their own copy of the contents
+        file.data.append(data);
+        file.size = file.data.size();
+        usedBytes += growth;
+        fileHandle.position = file.size;
+        dirtyFiles.add(file.id);
+        // The index records the size
+        treeDirty = true;
+        touch(fileHandle.file);
+    }
+
+    @Override
+    public long seek(int handle, long position) throws FileSystemException {
+        FileHandle fileHandle = getHandle(handle);
+        // Negative positions count back from the end of the file
+        long size = contents(fileHandle.file).size();
+        fileHandle.position = position < 0 ? Math.max(0, size + position) : position;
+        return fileHandle.position;
+    }
+
+    @Override
+    public long tell(int handle) throws FileSystemException {
+        return getHandle(handle).position;
+    }
+
+    @Override
+    public synchronized void close(int handle) throws FileSystemException {
+        if (handles.remove(handle) == null) {
+            throw new FileSystemException("Invalid file handle: " + handle);
+        }
+    }
+
+    @Override
+    public synchronized void closeAllHandles() {
+        handles.clear();
+    }
+
+    private FileHandle getHandle(int handle) throws FileSystemException {
+        FileHandle fileHandle = handles.get(handle);
+        if (fileHandle == null) {
+            throw new FileSystemException("Invalid file handle: " + handle);
+        }
+        return fileHandle;
+    }
+
+    // Interns contents that were just written whole, so identical files share one blob
+    private static void share(VirtualFile file) {
+        file.blob = BlobStore.intern(file.data);
+        file.data = file.blob.data;
+        file.hash = file.blob.hash;
+    }
+
+    // Blobs are never changed, so a file about to be appended to takes its own copy. Under a new
+    // id: copies and snapshots of the tree may still have the old one, for the shared contents
+    private void unshare(VirtualFile file) throws FileSystemException {
+        if (file.hash != null) {
+            file.data = contents(file).copy();
+            BlobStore.release(file.blob);
+            file.blob = null;
+            file.hash = null;
+            file.id = nextFileId++;
+            dirtyFiles.add(file.id);
+            treeDirty = true;
+        }
+    }
+
+    private boolean isOpenForWriting(VirtualFile file) {
+        for (FileHandle handle : handles.values()) {
+            if (handle.writable && handle.file == file) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isOpen(VirtualFile file) {
+        for (FileHandle handle : handles.values()) {
+            if (handle.file == file) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A file's contents, read from the store first if they aren't loaded
+    private FileData contents(VirtualFile file) throws FileSystemException {
+        FileData data = file.data;
+        if (data == null) {
+            return loadContents(file);
+        }
+        boolean over;
+        synchronized (residentFiles) {
+            residentFiles.get(file.inode);
+            over = isOverLimit();
+        }
+        if (over) {
+            trimContents();
+        }
+        return data;
+    }
+
+    // Dropping contents needs the file system's lock, to know what is still unsaved
+    private synchronized void trimContents() {
+        synchronized (residentFiles) {
+            evictContents();
+        }
+    }
+
+    // Reads from the store without the lock, which is only taken to publish what was read
+    private FileData loadContents(VirtualFile file) throws FileSystemException {
+        while (true) {
+            FileData data = file.data;
+            if (data != null) {
+                return data;
+            }
+            String id = storeId;
+            FileSystemStore store = id == null ? null : FileSystemStore.open(id);
+            if (store == null) {
+                throw new FileSystemException("File contents are not available: " + file.name);
+            }
+            CompletableFuture<Void> copied = storeCopied;
+            if (copied != null) {
+                copied.join();
+            }
+            String hash = file.hash;
+            long fileId = file.id;
+            BlobStore.Blob blob = null;
+            try {
+                if (hash != null) {
+                    // Another computer may have loaded the same contents already
+                    blob = BlobStore.acquire(hash);
+                    if (blob == null) {
+                        blob = BlobStore.intern(hash, store.readSharedBlob(hash));
+                    }
+                    data = blob.data;
+                } else {
+                    data = store.readBlob(fileId);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (!isLoadable(file, hash, fileId)) {
+                        // Loaded or rewritten meanwhile, and the old contents already replaced
+                        continue;
+                    }
+                }
+                MCJSMod.LOGGER.error("Failed to read contents of file " + fileId + " in file system " + id, e);
+                throw new FileSystemException("Failed to read file: " + file.name, e);
+            }
+            synchronized (this) {
+                if (isLoadable(file, hash, fileId)) {
+                    file.blob = blob;
+                    file.data = data;
+                    touch(file);
+                    return data;
+                }
+            }
+            // Someone else got there first, or the file changed while it was read
+            if (blob != null) {
+                BlobStore.release(blob);
+            }
+        }
+    }
+
+    // Still not loaded, and still the contents that were read
+    private static boolean isLoadable(VirtualFile file, String hash, long fileId) {
+        return file.data == null && Objects.equals(file.hash, hash) && file.id == fileId;
+    }
+
+    // Records a file's loaded contents as just used, dropping cold ones if over the limit
+    private void touch(VirtualFile file) {
+        if (!isNumbered(file)) {
+            // Not in its own place in the live tree, so nothing would ever drop it
+            return;
+        }
+        long size = file.data.size();
+        synchronized (residentFiles) {
+            Long previous = residentFiles.put(file.inode, size);
+            residentBytes += size - (previous == null ? 0 : previous);
+            if (isOverLimit()) {
+                evictContents();
             }
         }
     }
 
+    private boolean isOverLimit() {
+        return residentBytes > Math.max(RESIDENT_CONTENTS_LIMIT, pinnedBytes);
+    }
+
+    private void evictContents() {
+        Iterator<Map.Entry<Integer, Long>> it = residentFiles.entrySet().iterator();
+        while (it.hasNext() && residentBytes > RESIDENT_CONTENTS_LIMIT) {
+            Map.Entry<Integer, Long> entry = it.next();
+            VirtualFile file = inodes.get(entry.getKey());
+            if (file != null && isEvictable(file)) {
+                // A pending snapshot only reads contents it changed, and those are never dropped
+                if (file.blob != null) {
+                    BlobStore.release(file.blob);
+                    file.blob = null;
+                }
+                file.data = null;
+                residentBytes -= entry.getValue();
+                it.remove();
+            }
+        }
+        pinnedBytes = residentBytes > RESIDENT_CONTENTS_LIMIT ? residentBytes : 0;
+    }
+
+    // Unchanged since it was last written, and not open, so it can be read back from the store
+    private boolean isEvictable(VirtualFile file) {
+        if (file.data == null || storeId == null || dirtyFiles.contains(file.id) || isOpen(file)) {
+            return false;
+        }
+        for (Snapshot snapshot : pendingSnapshots) {
+            if (snapshot.changedFiles.contains(file.id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void forget(VirtualFile file) {
+        synchronized (residentFiles) {
+            Long size = residentFiles.remove(file.inode);
+            if (size != null) {
+                residentBytes -= size;
+            }
+        }
+    }
+
+    private static ByteBuffer encode(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns the (writable) parent directory, creating any that are missing
+    private VirtualFile createParentDirectories(String path) throws FileSystemException {
+        return mutableDirectory(parentOf(path), true);
+    }
+
+    // How many directories on the way to dir don't exist yet
+    private int missingDirectories(String dir) {
+        int missing = 0;
+        while (lookup(dir) == null) {
+            missing++;
+            dir = parentOf(dir);
+        }
+        return missing;
+    }
+
     @Override
-    public void deleteFile(String path) throws FileSystemException {
+    public synchronized void deleteFile(String path) throws FileSystemException {
         path = normalizePath(path);
-        String[] parts = path.split("/");
-        VirtualFile parent = navigateToParent(parts);
-        String fileName = parts[parts.length - 1];
+        VirtualFile parent = mutableParent(path);
+        String fileName = nameOf(path);
         if (!parent.children.containsKey(fileName)) {
             throw new FileSystemException("File not found: " + path);
         }
@@ -134,15 +618,23 @@ public class VirtualFileSystem implements IFileSystem {
         if (file.isDirectory) {
             throw new FileSystemException("Cannot delete directory using deleteFile: " + path);
         }
+        boolean owned = owns(parent, fileName, file);
         parent.children.remove(fileName);
+        if (owned) {
+            unregister(file);
+            deleted(file);
+        } else {
+            uncount(file);
+        }
+        invalidatePaths();
+        treeDirty = true;
     }
 
     @Override
-    public void deleteDirectory(String path) throws FileSystemException {
+    public synchronized void deleteDirectory(String path) throws FileSystemException {
         path = normalizePath(path);
-        String[] parts = path.split("/");
-        VirtualFile parent = navigateToParent(parts);
-        String dirName = parts[parts.length - 1];
+        VirtualFile parent = mutableParent(path);
+        String dirName = nameOf(path);
         if (!parent.children.containsKey(dirName)) {
             throw new FileSystemException("Directory not found: " + path);
         }
@@ -153,7 +645,15 @@ public class VirtualFileSystem implements IFileSystem {
         if (!dir.children.isEmpty()) {
             throw new FileSystemException("Directory not empty: " + path);
         }
+        boolean owned = owns(parent, dirName, dir);
         parent.children.remove(dirName);
+        if (owned) {
+            unregister(dir);
+        } else {
+            uncount(dir);
+        }
+        invalidatePaths();
+        treeDirty = true;
     }
 
     @Override
@@ -166,138 +666,1117 @@ public class VirtualFileSystem implements IFileSystem {
         return new ArrayList<>(dir.children.keySet());
     }
 
+    // Seeks into the sorted children instead of copying them, so a page costs O(log n + limit)
+    @Override
+    public List<String> list(String path, String after, int limit, String prefix) throws FileSystemException {
+        path = normalizePath(path);
+        VirtualFile dir = getFile(path);
+        if (!dir.isDirectory) {
+            throw new FileSystemException("Not a directory: " + path);
+        }
+        List<String> names = new ArrayList<>(Math.max(0, Math.min(limit, 256)));
+        if (limit <= 0) {
+            return names;
+        }
+        String start = prefix == null ? "" : prefix;
+        NavigableMap<String, VirtualFile> from = after != null && after.compareTo(start) >= 0
+                ? dir.children.tailMap(after, false)
+                : dir.children.tailMap(start, true);
+        for (String name : from.keySet()) {
+            if (!name.startsWith(start) || names.size() >= limit) {
+                break;
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    @Override
+    public List<String> search(String pathPrefix, int limit) throws FileSystemException {
+        String normalized = normalizePath(pathPrefix);
+        // A trailing slash means everything in that directory
+        boolean inside = normalized.equals("/") || pathPrefix.endsWith("/") || pathPrefix.endsWith("\\");
+        String directory = inside ? normalized : parentOf(normalized);
+        String prefix = inside ? "" : nameOf(normalized);
+        List<String> names = list(directory, null, limit, prefix);
+        List<String> paths = new ArrayList<>(names.size());
+        for (String name : names) {
+            paths.add(directory.equals("/") ? "/" + name : directory + "/" + name);
+        }
+        return paths;
+    }
+
     @Override
     public boolean exists(String path) {
         path = normalizePath(path);
-        boolean exists = false;
-        try {
-            getFile(path);
-            exists = true;
-        } catch (FileSystemException e) {
-            // File doesn't exist
-        }
-        MCJSMod.LOGGER.info("Checking if exists: " + path + " - " + exists);
+        boolean exists = lookup(path) != null;
+        MCJSMod.LOGGER.debug("Checking if exists: {} - {}", path, exists);
         return exists;
     }
 
     @Override
     public boolean isDirectory(String path) {
-        path = normalizePath(path);
-        try {
-            return getFile(path).isDirectory;
-        } catch (FileSystemException e) {
-            return false;
-        }
+        VirtualFile file = lookup(normalizePath(path));
+        return file != null && file.isDirectory;
     }
 
     @Override
-    public void move(String sourcePath, String destinationPath) throws FileSystemException {
+    public synchronized void move(String sourcePath, String destinationPath) throws FileSystemException {
         sourcePath = normalizePath(sourcePath);
         destinationPath = normalizePath(destinationPath);
-        VirtualFile sourceFile = getFile(sourcePath);
-        String[] destParts = destinationPath.split("/");
-        VirtualFile destParent = navigateToParent(destParts);
-        String destName = destParts[destParts.length - 1];
+        getFile(sourcePath);
+        VirtualFile destParent = mutableParent(destinationPath);
+        String destName = nameOf(destinationPath);
 
         if (destParent.children.containsKey(destName)) {
             throw new FileSystemException("Destination already exists: " + destinationPath);
         }
 
-        String[] sourceParts = sourcePath.split("/");
-        VirtualFile sourceParent = navigateToParent(sourceParts);
-        String sourceName = sourceParts[sourceParts.length - 1];
+        VirtualFile sourceParent = mutableParent(sourcePath);
+        String sourceName = nameOf(sourcePath);
 
+        VirtualFile sourceFile = mutableChild(sourceParent, sourceName);
         sourceParent.children.remove(sourceName);
-        destParent.children.put(destName, sourceFile);
         sourceFile.name = destName;
+        sourceFile.parentId = destParent.directoryId;
+        destParent.children.put(destName, sourceFile);
+        invalidatePaths();
+        // The file keeps its id, so moving never rewrites its contents
+        treeDirty = true;
     }
 
+    /**
+     * A directory is copied by putting its frozen node in the new place as well, so the copy
+     * costs nothing until either side changes, and then only the path to the change is copied.
+     * Only the directories changed since the tree was last frozen are walked, to count the copy
+     * and intern any private files in it. A directory with a file open for writing, and a
+     * single file, are copied node by node as before.
+     */
     @Override
-    public void copy(String sourcePath, String destinationPath) throws FileSystemException {
+    public synchronized void copy(String sourcePath, String destinationPath) throws FileSystemException {
         sourcePath = normalizePath(sourcePath);
         destinationPath = normalizePath(destinationPath);
         VirtualFile sourceFile = getFile(sourcePath);
-        String[] destParts = destinationPath.split("/");
-        VirtualFile destParent = navigateToParent(destParts);
-        String destName = destParts[destParts.length - 1];
-
+        String destName = nameOf(destinationPath);
+        VirtualFile destParent = getFile(parentOf(destinationPath));
+        if (!destParent.isDirectory) {
+            throw new FileSystemException("Not a directory: " + parentOf(destinationPath));
+        }
         if (destParent.children.containsKey(destName)) {
             throw new FileSystemException("Destination already exists: " + destinationPath);
         }
 
-        VirtualFile newFile = sourceFile.clone();
-        newFile.name = destName;
-        destParent.children.put(destName, newFile);
+        reserve(usage(sourceFile).bytes(), destinationPath);
+        if (sourceFile.isDirectory && internPrivateFiles(sourcePath)) {
+            // Interning may have replaced nodes on the way, and the copy must see them frozen
+            sourceFile = getFile(sourcePath);
+            generation++;
+            SubtreeUsage usage = usage(sourceFile);
+            mutableParent(destinationPath).children.put(destName, sourceFile);
+            usedBytes += usage.bytes();
+            fileCount += usage.files();
+            treeDirty = true;
+            return;
+        }
+
+        VirtualFile newFile = cloneTree(sourceFile);
+        // Ids first: contents are only ever dropped once saved under their id
+        created(newFile);
+        attach(mutableParent(destinationPath), destName, newFile);
     }
 
-    private VirtualFile getFile(String path) throws FileSystemException {
+    @Override
+    public synchronized void snapshot(String name) throws FileSystemException {
+        if (name == null || name.isEmpty()) {
+            throw new FileSystemException("Invalid snapshot name");
+        }
+        if (!namedSnapshots.containsKey(name) && namedSnapshots.size() >= MAX_NAMED_SNAPSHOTS) {
+            throw new FileSystemException("Too many snapshots (at most " + MAX_NAMED_SNAPSHOTS + ")");
+        }
+        if (!internPrivateFiles("/")) {
+            throw new FileSystemException("Cannot take a snapshot while a file is open for writing");
+        }
+        generation++;
+        namedSnapshots.put(name, root);
+        // Measured now, while little has changed, so restoring it never walks the tree
+        usage(root);
+        treeDirty = true;
+    }
+
+    /**
+     * Makes a snapshot the live tree again. Its nodes stay shared with the snapshot, but they
+     * are all numbered again, so unlike taking one this walks the restored tree once.
+     */
+    @Override
+    public synchronized void restore(String name) throws FileSystemException {
+        VirtualFile saved = namedSnapshots.get(name);
+        if (saved == null) {
+            throw new FileSystemException("Snapshot not found: " + name);
+        }
+        generation++;
+        reserve(usage(saved).bytes() - usedBytes, "/");
+        // The current tree goes as if deleted; whatever the snapshot still has is interned and stays
+        deleted(root);
+        reindex(saved);
+        acquireBlobs(root);
+        treeDirty = true;
+    }
+
+    @Override
+    public synchronized void deleteSnapshot(String name) throws FileSystemException {
+        VirtualFile deleted = namedSnapshots.remove(name);
+        if (deleted == null) {
+            throw new FileSystemException("Snapshot not found: " + name);
+        }
+        deletedSnapshots.add(deleted);
+        treeDirty = true;
+    }
+
+    @Override
+    public synchronized List<String> listSnapshots() {
+        return new ArrayList<>(namedSnapshots.keySet());
+    }
+
+    @Override
+    public FileStat stat(String path) throws FileSystemException {
         path = normalizePath(path);
-        if (path.equals("/")) {
-            return root;
+        VirtualFile file = getFile(path);
+        return file.isDirectory ? new FileStat(true, 0, file.children.size()) : new FileStat(false, file.size, 0);
+    }
+
+    @Override
+    public synchronized DiskUsage getUsage() {
+        return new DiskUsage(usedBytes, quota, fileCount);
+    }
+
+    @Override
+    public synchronized void setQuota(long bytes) {
+        quota = bytes;
+    }
+
+    private static long charge(long size) {
+        return Math.max(size, MIN_ENTRY_BYTES);
+    }
+
+    private static long charge(VirtualFile node) {
+        return node.isDirectory ? MIN_ENTRY_BYTES : charge(node.size);
+    }
+
+    // What a subtree counts for. A frozen directory without private files can never change, so it keeps its total
+    private SubtreeUsage usage(VirtualFile node) {
+        if (!node.isDirectory) {
+            return new SubtreeUsage(charge(node), 1, node.hash == null ? 1 : 0);
+        }
+        if (node.usage != null) {
+            return node.usage;
+        }
+        long bytes = MIN_ENTRY_BYTES;
+        long files = 0;
+        long privateFiles = 0;
+        for (VirtualFile child : node.children.values()) {
+            SubtreeUsage usage = usage(child);
+            bytes += usage.bytes();
+            files += usage.files();
+            privateFiles += usage.privateFiles();
+        }
+        SubtreeUsage usage = new SubtreeUsage(bytes, files, privateFiles);
+        if (node.generation < generation && privateFiles == 0) {
+            node.usage = usage;
+        }
+        return usage;
+    }
+
+    // Takes a node that shared another's place out of the counts; it has no inode or blobs of its own
+    private void uncount(VirtualFile node) {
+        SubtreeUsage usage = usage(node);
+        usedBytes -= usage.bytes();
+        fileCount -= usage.files();
+    }
+
+    /**
+     * Interns every private file under a path, so the subtree can be shared: appends and
+     * private blobs are the only things that change a frozen file. False, with nothing changed,
+     * if one of them is open for writing.
+     */
+    private boolean internPrivateFiles(String path) throws FileSystemException {
+        if (usage(getFile(path)).privateFiles() == 0) {
+            return true;
+        }
+        List<String> paths = new ArrayList<>();
+        findPrivateFiles(getFile(path), path, paths);
+        for (String filePath : paths) {
+            if (isOpenForWriting(getFile(filePath))) {
+                return false;
+            }
         }
-        String[] parts = path.split("/");
+        for (String filePath : paths) {
+            VirtualFile file = mutableChild(mutableParent(filePath), nameOf(filePath));
+            file.data = contents(file);
+            share(file);
+            // Written under its hash on the next save, which also deletes the private blob
+            dirtyFiles.add(file.id);
+            treeDirty = true;
+            touch(file);
+        }
+        return true;
+    }
+
+    private static void findPrivateFiles(VirtualFile node, String path, List<String> into) {
+        if (!node.isDirectory) {
+            if (node.hash == null) {
+                into.add(path);
+            }
+        } else if (node.usage == null) {
+            for (Map.Entry<String, VirtualFile> entry : node.children.entrySet()) {
+                findPrivateFiles(entry.getValue(), path.equals("/") ? "/" + entry.getKey() : path + "/" + entry.getKey(), into);
+            }
+        }
+    }
+
+    // Fails a change that would grow usage past the quota, before anything is changed
+    private void reserve(long bytes, String path) throws FileSystemException {
+        if (bytes > 0 && usedBytes + bytes > quota) {
+            throw new FileSystemException("Not enough space for " + path + " (" + usedBytes + " of " + quota + " bytes used)");
+        }
+    }
+
+    // Shared contents are copied by reference, loaded or not; private ones byte for byte
+    private VirtualFile cloneTree(VirtualFile source) throws FileSystemException {
+        if (source.isDirectory) {
+            VirtualFile clone = new VirtualFile(source.name, true, generation);
+            for (Map.Entry<String, VirtualFile> entry : source.children.entrySet()) {
+                clone.children.put(entry.getKey(), cloneTree(entry.getValue()));
+            }
+            return clone;
+        }
+        if (source.hash == null) {
+            return new VirtualFile(source.name, contents(source).copy(), generation);
+        }
+        VirtualFile clone = new VirtualFile(source.name, source.data, generation);
+        clone.size = source.size;
+        clone.hash = source.hash;
+        if (source.blob != null) {
+            clone.blob = BlobStore.acquire(source.blob);
+        }
+        return clone;
+    }
+
+    private VirtualFile getFile(String path) throws FileSystemException {
+        VirtualFile file = lookup(path);
+        if (file == null) {
+            throw new FileSystemException("Path not found: " + path);
+        }
+        return file;
+    }
+
+    // Resolves a normalised path, through the path cache when it can; null when it doesn't exist
+    private VirtualFile lookup(String path) {
+        VirtualFile cached = cachedLookup(path);
+        if (cached != null) {
+            return cached;
+        }
+        // Read before walking, so what is cached from a tree that changed meanwhile is already stale
+        long epoch = pathEpoch;
         VirtualFile current = root;
-        for (int i = 1; i < parts.length; i++) {
-            String part = parts[i];
-            if (!current.children.containsKey(part)) {
-                throw new FileSystemException("Path not found: " + path);
+        // A node reached through a shared one has another place's inode, so it isn't cached
+        boolean owned = true;
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (!current.isDirectory) {
+                return null;
             }
-            current = current.children.get(part);
+            String part = path.substring(start, end);
+            VirtualFile child = current.children.get(part);
+            if (child == null) {
+                return null;
+            }
+            owned = owned && owns(current, part, child);
+            current = child;
+            start = end + 1;
+        }
+        if (owned) {
+            cache(path, current, epoch);
         }
         return current;
     }
 
-    private VirtualFile navigateToParent(String[] parts) throws FileSystemException {
+    // Whether each node on the path is in its own place, rather than in one it shares through a copy
+    private boolean ownsPath(String path) {
+        if (cachedLookup(path) != null) {
+            return true;
+        }
         VirtualFile current = root;
-        for (int i = 1; i < parts.length - 1; i++) {
-            String part = parts[i];
-            if (!current.children.containsKey(part)) {
-                throw new FileSystemException("Path not found: " + String.join("/", parts));
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
             }
-            current = current.children.get(part);
-            if (!current.isDirectory) {
-                throw new FileSystemException("Not a directory: " + String.join("/", parts));
+            String part = path.substring(start, end);
+            VirtualFile child = current.children.get(part);
+            if (child == null || !owns(current, part, child)) {
+                return false;
             }
+            current = child;
+            start = end + 1;
+        }
+        return true;
+    }
+
+    private static boolean owns(VirtualFile parent, String name, VirtualFile child) {
+        return child.parentId == parent.directoryId && child.name.equals(name);
+    }
+
+    private VirtualFile cachedLookup(String path) {
+        CachedPath cached = pathCache.get(path);
+        if (cached == null || cached.epoch != pathEpoch) {
+            return null;
+        }
+        VirtualFile node = inodes.get(cached.inode);
+        // Checked again: the inode may have been freed and reused in between
+        return cached.epoch == pathEpoch ? node : null;
+    }
+
+    private void cache(String path, VirtualFile node, long epoch) {
+        if ((epoch & 1) != 0) {
+            return;
         }
+        if (pathCache.size() >= PATH_CACHE_SIZE) {
+            pathCache.clear();
+        }
+        pathCache.put(path, new CachedPath(node.inode, epoch));
+    }
+
+    // Paths that resolved before may no longer; called whenever a path is removed or renamed
+    private void invalidatePaths() {
+        pathEpoch += 2;
+    }
+
+    private VirtualFile mutableParent(String path) throws FileSystemException {
+        return mutableDirectory(parentOf(path), false);
+    }
+
+    /**
+     * Resolves a directory that may be changed, copying any directory on the way that a
+     * snapshot still shares. A live node of the current generation only ever sits under
+     * others of the current generation, so a cached one needs no walk at all.
+     */
+    private VirtualFile mutableDirectory(String path, boolean create) throws FileSystemException {
+        VirtualFile cached = cachedLookup(path);
+        if (cached != null && cached.isDirectory && cached.generation == generation) {
+            return cached;
+        }
+        VirtualFile current = mutableRoot();
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            String part = path.substring(start, end);
+            VirtualFile child = current.children.get(part);
+            if (child == null) {
+                if (!create) {
+                    throw new FileSystemException("Path not found: " + path);
+                }
+                reserve(MIN_ENTRY_BYTES, path);
+                MCJSMod.LOGGER.info("Creating directory: " + part);
+                child = new VirtualFile(part, true, generation);
+                attach(current, part, child);
+                treeDirty = true;
+            }
+            if (!child.isDirectory) {
+                throw new FileSystemException(create ? "Path component is not a directory: " + part : "Not a directory: " + path);
+            }
+            current = mutableChild(current, part);
+            start = end + 1;
+        }
+        cache(path, current, pathEpoch);
         return current;
     }
 
-    public void  save(CompoundTag tag) {
-        tag.putString("fileSystem", GSON.toJson(root));
+    private VirtualFile mutableRoot() {
+        if (root.generation < generation) {
+            root = root.copy(generation);
+            inodes.set(root.inode, root);
+        }
+        return root;
+    }
+
+    // The parent must already be mutable; a shared child is replaced by a copy in it
+    private VirtualFile mutableChild(VirtualFile parent, String name) {
+        VirtualFile child = parent.children.get(name);
+        boolean owned = owns(parent, name, child);
+        if (child.generation == generation && owned) {
+            return child;
+        }
+        VirtualFile copy = child.copy(generation);
+        if (owned) {
+            inodes.set(copy.inode, copy);
+            // Open handles follow the file to its copy
+            for (FileHandle handle : handles.values()) {
+                if (handle.file == child) {
+                    handle.file = copy;
+                }
+            }
+        } else {
+            // Its own place from here on; a directory's new id leaves its children shared
+            copy.parentId = parent.directoryId;
+            copy.name = name;
+            if (copy.isDirectory) {
+                copy.directoryId = nextDirectoryId++;
+            }
+            if (copy.blob != null) {
+                copy.blob = BlobStore.acquire(copy.blob);
+            }
+            number(copy);
+            if (copy.data != null) {
+                touch(copy);
+            }
+        }
+        parent.children.put(name, copy);
+        return copy;
+    }
+
+    // Numbers a new node (and everything under it) and puts it in its place. Numbered before it
+    // is published, so a reader never caches a node without its inode
+    private void attach(VirtualFile parent, String name, VirtualFile node) {
+        node.name = name;
+        node.parentId = parent.directoryId;
+        register(node);
+        parent.children.put(name, node);
+    }
+
+    // Gives a node (and everything under it) an inode number and counts it
+    private void register(VirtualFile node) {
+        number(node);
+        usedBytes += charge(node);
+        if (node.isDirectory) {
+            node.directoryId = nextDirectoryId++;
+            for (Map.Entry<String, VirtualFile> entry : node.children.entrySet()) {
+                VirtualFile child = entry.getValue();
+                if (isNumbered(child)) {
+                    // A restored snapshot can have a node in two places; it stays in the first
+                    SubtreeUsage usage = usage(child);
+                    usedBytes += usage.bytes();
+                    fileCount += usage.files();
+                    continue;
+                }
+                child.name = entry.getKey();
+                child.parentId = node.directoryId;
+                register(child);
+            }
+        } else {
+            fileCount++;
+            if (node.data != null) {
+                touch(node);
+            }
+        }
+    }
+
+    // Whether the node has its inode in the live tree; one from before a reload may be past the end
+    private boolean isNumbered(VirtualFile node) {
+        AtomicReferenceArray<VirtualFile> table = inodes;
+        return node.inode < table.length() && table.get(node.inode) == node;
+    }
+
+    private void number(VirtualFile node) {
+        Integer free = freeInodes.poll();
+        if (free != null) {
+            node.inode = free;
+            inodes.set(free, node);
+        } else {
+            if (inodeCount == inodes.length()) {
+                AtomicReferenceArray<VirtualFile> grown = new AtomicReferenceArray<>(inodeCount * 2);
+                for (int i = 0; i < inodeCount; i++) {
+                    grown.set(i, inodes.get(i));
+                }
+                inodes = grown;
+            }
+            node.inode = inodeCount++;
+            inodes.set(node.inode, node);
+        }
     }
 
-    public void load(CompoundTag tag) {
-        if (tag.contains("fileSystem", Tag.TAG_STRING)) {
+    private void unregister(VirtualFile node) {
+        if (node.isDirectory) {
+            for (Map.Entry<String, VirtualFile> entry : node.children.entrySet()) {
+                if (owns(node, entry.getKey(), entry.getValue())) {
+                    unregister(entry.getValue());
+                } else {
+                    uncount(entry.getValue());
+                }
+            }
+        } else {
+            fileCount--;
+            forget(node);
+        }
+        usedBytes -= charge(node);
+        inodes.set(node.inode, null);
+        freeInodes.push(node.inode);
+    }
+
+    // Gives a new file (or every file under a new directory) an id and queues it for the next save
+    private void created(VirtualFile file) {
+        if (file.isDirectory) {
+            file.children.values().forEach(this::created);
+        } else {
+            file.id = nextFileId++;
+            dirtyFiles.add(file.id);
+        }
+        treeDirty = true;
+    }
+
+    // Only what is in its own place: a shared node still belongs to the other one
+    private void deleted(VirtualFile file) {
+        if (file.isDirectory) {
+            for (Map.Entry<String, VirtualFile> entry : file.children.entrySet()) {
+                if (owns(file, entry.getKey(), entry.getValue())) {
+                    deleted(entry.getValue());
+                }
+            }
+        } else {
+            // Left in dirtyFiles: shared contents interned for a copy are saved by whoever still has them
+            deletedFiles.add(file.id);
+            // The node itself is left alone: a snapshot may still be writing it
+            if (file.blob != null) {
+                BlobStore.release(file.blob);
+            }
+        }
+        treeDirty = true;
+    }
+
+    @Override
+    public synchronized void release() {
+        releaseBlobs();
+        if (storeId != null) {
+            FileSystemStore.unclaim(storeId, this);
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        release();
+        if (storeId != null) {
+            FileSystemStore store = FileSystemStore.open(storeId);
+            if (store != null) {
+                store.deleteLater();
+            }
+        }
+    }
+
+    private static void releaseBlobs(VirtualFile node) {
+        if (node.isDirectory) {
+            for (Map.Entry<String, VirtualFile> entry : node.children.entrySet()) {
+                if (owns(node, entry.getKey(), entry.getValue())) {
+                    releaseBlobs(entry.getValue());
+                }
+            }
+        } else if (node.blob != null) {
+            BlobStore.release(node.blob);
+        }
+    }
+
+    // A restored snapshot's files hold no references until they are live again
+    private static void acquireBlobs(VirtualFile node) {
+        if (node.isDirectory) {
+            for (Map.Entry<String, VirtualFile> entry : node.children.entrySet()) {
+                if (owns(node, entry.getKey(), entry.getValue())) {
+                    acquireBlobs(entry.getValue());
+                }
+            }
+        } else if (node.blob != null) {
+            node.blob = BlobStore.acquire(node.blob);
+        }
+    }
+
+    // Makes a freshly loaded or restored tree the live one, with a new inode table and path cache
+    private void reindex(VirtualFile tree) {
+        // Odd, so readers still on the old tree cache nothing until the new one is in
+        pathEpoch++;
+        inodes = new AtomicReferenceArray<>(64);
+        inodeCount = 0;
+        freeInodes.clear();
+        pathCache.clear();
+        synchronized (residentFiles) {
+            residentFiles.clear();
+            residentBytes = 0;
+            pinnedBytes = 0;
+        }
+        usedBytes = 0;
+        fileCount = 0;
+        register(tree);
+        root = tree;
+        pathEpoch++;
+    }
+
+    /**
+     * Records the store id and version in the tag and queues the files changed since the last
+     * save to be written to this computer's store. Only an O(1) snapshot is taken here; the
+     * encoding and disk writes happen on the store's I/O thread. Nothing is queued when
+     * nothing changed, and if the write fails its changes are queued again for the next save.
+     */
+    public void save(CompoundTag tag) {
+        Snapshot snapshot = null;
+        FileSystemStore store;
+        synchronized (this) {
+            if (storeId == null) {
+                // First save, or a world from before the store: everything goes out once
+                useStore(UUID.randomUUID().toString());
+                markAllDirty(root);
+                namedSnapshots.values().forEach(this::markAllDirty);
+            }
+            store = FileSystemStore.open(storeId);
+            if (store != null && (treeDirty || !dirtyFiles.isEmpty() || !deletedFiles.isEmpty())) {
+                snapshot = takeSnapshot();
+            }
+            tag.putString("fileStore", storeId);
+            tag.putLong("fileStoreVersion", storeVersion);
+        }
+        if (snapshot != null) {
+            Snapshot written = snapshot;
+            store.writeLater(target -> {
+                written.write(target);
+                finished(written);
+            }, e -> {
+                MCJSMod.LOGGER.error("Failed to save file system " + written.storeId, e);
+                requeue(written);
+            });
+        }
+    }
+
+    private Snapshot takeSnapshot() {
+        // Files open for writing keep changing in place, so the snapshot gets its own view of them
+        Map<VirtualFile, FileData> openFiles = new IdentityHashMap<>();
+        for (FileHandle handle : handles.values()) {
+            if (handle.writable) {
+                openFiles.put(handle.file, handle.file.data.copy());
+            }
+        }
+        Snapshot snapshot = new Snapshot(storeId, ++storeVersion, nextFileId, root, new TreeMap<>(namedSnapshots), openFiles,
+                dirtyFiles, deletedFiles, deletedSnapshots, treeDirty);
+        pendingSnapshots.add(snapshot);
+        generation++;
+        dirtyFiles = new HashSet<>();
+        deletedFiles = new HashSet<>();
+        deletedSnapshots = new ArrayList<>();
+        treeDirty = false;
+        return snapshot;
+    }
+
+    private synchronized void finished(Snapshot snapshot) {
+        pendingSnapshots.remove(snapshot);
+        // What it wrote can be read back now
+        trimContents();
+    }
+
+    private synchronized void requeue(Snapshot snapshot) {
+        pendingSnapshots.remove(snapshot);
+        dirtyFiles.addAll(snapshot.changedFiles);
+        deletedFiles.addAll(snapshot.deletedFiles);
+        deletedSnapshots.addAll(snapshot.deletedSnapshots);
+        treeDirty |= snapshot.treeChanged;
+    }
+
+    private static void writeNode(DataOutputStream out, VirtualFile node, Map<VirtualFile, FileData> openFiles) throws IOException {
+        out.writeBoolean(node.isDirectory);
+        if (node.isDirectory) {
+            out.writeInt(node.children.size());
+            for (Map.Entry<String, VirtualFile> entry : node.children.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeNode(out, entry.getValue(), openFiles);
+            }
+        } else {
+            out.writeLong(node.id);
+            // A file open for writing may have grown since; the snapshot has its own copy of it
+            FileData open = openFiles.get(node);
+            out.writeLong(open != null ? open.size() : node.size);
+            out.writeBoolean(node.hash != null);
+            if (node.hash != null) {
+                out.writeUTF(node.hash);
+            }
+        }
+    }
+
+    private static int readFormat(DataInputStream in) throws IOException {
+        int format = in.readInt() == INDEX_MAGIC ? in.readInt() : -1;
+        if (format < 1 || format > INDEX_FORMAT) {
+            throw new IOException("Unrecognised file store index");
+        }
+        return format;
+    }
+
+    // Adds the hashes of the shared blobs an index refers to, without loading any contents
+    static void readSharedReferences(DataInputStream in, Set<String> into) throws IOException {
+        int format = readFormat(in);
+        in.readLong();
+        in.readLong();
+        if (format >= 2) {
+            readSharedReferences(in, into, format);
+        }
+        if (format >= 4) {
+            int snapshots = in.readInt();
+            for (int i = 0; i < snapshots; i++) {
+                in.readUTF();
+                readSharedReferences(in, into, format);
+            }
+        }
+    }
+
+    private static void readSharedReferences(DataInputStream in, Set<String> into, int format) throws IOException {
+        if (in.readBoolean()) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                in.readUTF();
+                readSharedReferences(in, into, format);
+            }
+        } else {
+            in.readLong();
+            if (format >= 3) {
+                in.readLong();
+            }
+            if (in.readBoolean()) {
+                into.add(in.readUTF());
+            }
+        }
+    }
+
+    private void markAllDirty(VirtualFile node) {
+        if (node.isDirectory) {
+            node.children.values().forEach(this::markAllDirty);
+        } else {
+            if (node.id == 0) {
+                node.id = nextFileId++;
+            }
+            dirtyFiles.add(node.id);
+        }
+        treeDirty = true;
+    }
+
+    public synchronized void load(CompoundTag tag) {
+        if (tag.contains("fileStore", Tag.TAG_STRING)) {
+            String id = tag.getString("fileStore");
+            FileSystemStore store = FileSystemStore.open(id);
+            if (store == null) {
+                MCJSMod.LOGGER.warn("No file store available to load file system " + id);
+                return;
+            }
+            // The computer may have been unloaded a moment ago with its last save still queued
+            store.awaitWrites();
+            try {
+                releaseBlobs();
+                loadStore(store, tag.getLong("fileStoreVersion"));
+                if (FileSystemStore.claim(id, this)) {
+                    useStore(id);
+                } else {
+                    // A copy of a computer that is still around; from here on it keeps a store of its own
+                    String forkId = UUID.randomUUID().toString();
+                    MCJSMod.LOGGER.info("File store " + id + " is already in use, copying it to " + forkId);
+                    CompletableFuture<Void> copied = store.fork(forkId);
+                    useStore(forkId);
+                    storeCopied = copied;
+                }
+            } catch (IOException e) {
+                MCJSMod.LOGGER.error("Failed to load file system " + id, e);
+            }
+        } else if (tag.contains("fileSystem", Tag.TAG_STRING)) {
+            // Saved before the file store existed; moved into a store on the next save
             String json = tag.getString("fileSystem");
-            this.root = GSON.fromJson(json, VirtualFile.class);
+            releaseBlobs();
+            VirtualFile loaded = GSON.fromJson(json, VirtualFile.class);
+            loaded.restoreAfterLoad();
+            released = false;
+            reindex(loaded);
+            namedSnapshots.clear();
+            deletedSnapshots.clear();
+            useStore(null);
+        }
+    }
+
+    private void useStore(String id) {
+        if (storeId != null && !storeId.equals(id)) {
+            FileSystemStore.unclaim(storeId, this);
+        }
+        storeId = id;
+        storeCopied = null;
+        if (id != null) {
+            FileSystemStore.claim(id, this);
+        }
+    }
+
+    // Lets go of the current tree's blobs before another one replaces it
+    private void releaseBlobs() {
+        if (!released) {
+            released = true;
+            releaseBlobs(root);
+        }
+    }
+
+    private void loadStore(FileSystemStore store, long expectedVersion) throws IOException {
+        if (!store.hasIndex()) {
+            throw new IOException("File store has no index");
+        }
+        int format;
+        try (DataInputStream in = store.openIndex()) {
+            format = readFormat(in);
+            // The index is only rewritten when the tree changes, so it is normally at or behind the world
+            long version = in.readLong();
+            if (version > expectedVersion) {
+                MCJSMod.LOGGER.warn("File store is newer than the world (version " + version + ", expected " + expectedVersion + "), the world may have been restored from a backup");
+            }
+            long nextId = in.readLong();
+            VirtualFile loaded = readNode(in, store, "", format);
+            // Each is read as a tree of its own; what they shared is only shared on disk, by hash
+            Map<String, VirtualFile> snapshots = new TreeMap<>();
+            int snapshotCount = format >= 4 ? in.readInt() : 0;
+            for (int i = 0; i < snapshotCount; i++) {
+                String name = in.readUTF();
+                snapshots.put(name, readNode(in, store, "", format));
+            }
+            released = false;
+            reindex(loaded);
+            namedSnapshots.clear();
+            namedSnapshots.putAll(snapshots);
+            this.nextFileId = nextId;
+            this.storeVersion = Math.max(version, expectedVersion);
+        }
+        handles.clear();
+        dirtyFiles.clear();
+        deletedFiles.clear();
+        deletedSnapshots.clear();
+        // An index from an older format is brought up to date on the next save
+        treeDirty = format < INDEX_FORMAT;
+    }
+
+    private VirtualFile readNode(DataInputStream in, FileSystemStore store, String name, int format) throws IOException {
+        if (in.readBoolean()) {
+            VirtualFile dir = new VirtualFile(name, true, generation);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String childName = in.readUTF();
+                dir.children.put(childName, readNode(in, store, childName, format));
+            }
+            return dir;
+        }
+        // Only the index is read here; contents follow on first use
+        VirtualFile file = new VirtualFile(name, (FileData) null, generation);
+        file.id = in.readLong();
+        if (format >= 3) {
+            file.size = in.readLong();
+        }
+        if (format >= 2 && in.readBoolean()) {
+            file.hash = in.readUTF();
+        }
+        if (format < 3) {
+            // Older indexes have no sizes, so the contents are read once to find out
+            file.size = (file.hash != null ? store.readSharedBlob(file.hash) : store.readBlob(file.id)).size();
+        }
+        return file;
+    }
+
+    /**
+     * The tree and changed files as of one save. Its nodes are never changed again, so it can
+     * be written while scripts keep using the file system.
+     */
+    private static class Snapshot {
+        final String storeId;
+        final long version;
+        final long nextFileId;
+        final VirtualFile root;
+        final Map<String, VirtualFile> namedSnapshots;
+        final Map<VirtualFile, FileData> openFiles;
+        final Set<Long> changedFiles;
+        final Set<Long> deletedFiles;
+        final List<VirtualFile> deletedSnapshots;
+        final boolean treeChanged;
+
+        Snapshot(String storeId, long version, long nextFileId, VirtualFile root, Map<String, VirtualFile> namedSnapshots,
+                 Map<VirtualFile, FileData> openFiles, Set<Long> changedFiles, Set<Long> deletedFiles,
+                 List<VirtualFile> deletedSnapshots, boolean treeChanged) {
+            this.storeId = storeId;
+            this.version = version;
+            this.nextFileId = nextFileId;
+            this.root = root;
+            this.namedSnapshots = namedSnapshots;
+            this.openFiles = openFiles;
+            this.changedFiles = changedFiles;
+            this.deletedFiles = deletedFiles;
+            this.deletedSnapshots = deletedSnapshots;
+            this.treeChanged = treeChanged;
+        }
+
+        void write(FileSystemStore store) throws IOException {
+            // Contents first, so the index never names a file whose blob isn't there yet
+            List<Long> replaced = new ArrayList<>();
+            if (!changedFiles.isEmpty()) {
+                // A file deleted since it was interned for a snapshot is only there
+                Set<VirtualFile> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+                writeChangedFiles(store, root, replaced, visited);
+                for (VirtualFile tree : namedSnapshots.values()) {
+                    writeChangedFiles(store, tree, replaced, visited);
+                }
+            }
+            if (treeChanged) {
+                store.writeIndex(out -> {
+                    out.writeInt(INDEX_MAGIC);
+                    out.writeInt(INDEX_FORMAT);
+                    out.writeLong(version);
+                    out.writeLong(nextFileId);
+                    writeNode(out, root, openFiles);
+                    out.writeInt(namedSnapshots.size());
+                    for (Map.Entry<String, VirtualFile> entry : namedSnapshots.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        writeNode(out, entry.getValue(), openFiles);
+                    }
+                });
+            }
+            for (long id : deletedFiles) {
+                store.deleteBlob(id);
+            }
+            if (treeChanged && !deletedSnapshots.isEmpty()) {
+                // Frozen since they were taken, so they can be walked here
+                Set<String> hashes = new HashSet<>();
+                Set<VirtualFile> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (VirtualFile tree : deletedSnapshots) {
+                    collectHashes(tree, hashes, visited);
+                }
+                store.deleteUnreferencedSharedBlobs(hashes);
+            }
+            // Only once the index no longer names them
+            for (long id : replaced) {
+                store.deleteBlob(id);
+            }
+        }
+
+        private static void collectHashes(VirtualFile node, Set<String> into, Set<VirtualFile> visited) {
+            if (node.isDirectory) {
+                if (visited.add(node)) {
+                    for (VirtualFile child : node.children.values()) {
+                        collectHashes(child, into, visited);
+                    }
+                }
+            } else if (node.hash != null) {
+                into.add(node.hash);
+            }
+        }
+
+        // Copies and snapshots share whole subtrees, which are only walked once
+        private void writeChangedFiles(FileSystemStore store, VirtualFile node, List<Long> replaced, Set<VirtualFile> visited) throws IOException {
+            if (node.isDirectory) {
+                if (!visited.add(node)) {
+                    return;
+                }
+                for (VirtualFile child : node.children.values()) {
+                    writeChangedFiles(store, child, replaced, visited);
+                }
+            } else if (changedFiles.contains(node.id)) {
+                if (node.hash != null) {
+                    // Shared contents that aren't loaded came from the store, so they are already there
+                    if (node.data != null) {
+                        store.writeSharedBlob(node.hash, node.data);
+                    }
+                    // It may have had private contents before it was last written whole
+                    replaced.add(node.id);
+                } else {
+                    store.writeBlob(node.id, openFiles.getOrDefault(node, node.data));
+                }
+            }
+        }
+    }
+
+    // An open file; it keeps pointing at the same file if it is moved or deleted meanwhile
+    private static class FileHandle {
+        volatile VirtualFile file;
+        final boolean writable;
+        long position;
+
+        FileHandle(VirtualFile file, boolean writable, long position) {
+            this.file = file;
+            this.writable = writable;
+            this.position = position;
         }
     }
 
     private static class VirtualFile {
         String name;
         boolean isDirectory;
+        // Identifies the file's contents in the store; never reused, 0 for directories
+        transient long id;
+        transient int inode;
+        // Where the node is in its own place; see nextDirectoryId
+        transient long parentId;
+        transient long directoryId;
+        // Set on a frozen directory with no private files under it, whose usage can't change
+        transient SubtreeUsage usage;
+        // Null while the contents are only in the store
+        transient volatile FileData data;
+        // Kept even while the contents aren't loaded
+        transient volatile long size;
+        // The hash of shared contents, or null for contents of its own; blob is set while they are loaded
+        transient String hash;
+        transient BlobStore.Blob blob;
+        // Serialized form of data; older saves stored plain text in 'content'
+        String encoded;
         String content;
-        Map<String, VirtualFile> children;
+        // Sorted, so listings come out in order and can be paged and searched by prefix
+        ConcurrentSkipListMap<String, VirtualFile> children;
+
+        // The generation the node was created or copied in; older nodes may be shared with a snapshot
+        transient long generation;
+
+        VirtualFile(String name, boolean isDirectory, long generation) {
+            this(name, isDirectory, isDirectory ? null : new FileData(), generation);
+        }
 
-        VirtualFile(String name, boolean isDirectory) {
-            this(name, isDirectory, "");
+        VirtualFile(String name, FileData data, long generation) {
+            this(name, false, data, generation);
         }
 
-        VirtualFile(String name, boolean isDirectory, String content) {
+        private VirtualFile(String name, boolean isDirectory, FileData data, long generation) {
             this.name = name;
             this.isDirectory = isDirectory;
-            this.content = content;
-            this.children = isDirectory ? new HashMap<>() : null;
+            this.data = data;
+            this.size = data == null ? 0 : data.size();
+            this.children = isDirectory ? new ConcurrentSkipListMap<>() : null;
+            this.generation = generation;
         }
 
-        public VirtualFile clone() {
-            VirtualFile clone = new VirtualFile(this.name, this.isDirectory, this.content);
-            if (this.isDirectory) {
-                for (Map.Entry<String, VirtualFile> entry : this.children.entrySet()) {
-                    clone.children.put(entry.getKey(), entry.getValue().clone());
-                }
+        // A node of the given generation with the same contents; children are shared, not copied
+        VirtualFile copy(long generation) {
+            // A blob is never changed, so the copy just keeps pointing at it; it is still one reference
+            VirtualFile copy = new VirtualFile(name, isDirectory, isDirectory || hash != null || data == null ? data : data.copy(), generation);
+            copy.hash = hash;
+            copy.blob = blob;
+            copy.size = size;
+            copy.id = id;
+            copy.inode = inode;
+            copy.parentId = parentId;
+            copy.directoryId = directoryId;
+            if (isDirectory) {
+                // Built from the sorted entries in one pass
+                copy.children = new ConcurrentSkipListMap<>(children);
             }
-            return clone;
+            return copy;
+        }
+
+        void restoreAfterLoad() {
+            if (isDirectory) {
+                children.values().forEach(VirtualFile::restoreAfterLoad);
+            } else if (encoded != null) {
+                data = FileData.of(ByteBuffer.wrap(Base64.getDecoder().decode(encoded)));
+            } else {
+                data = FileData.of(encode(content != null ? content : ""));
+            }
+            if (!isDirectory) {
+                size = data.size();
+                share(this);
+            }
+            encoded = null;
+            content = null;
         }
     }
 }
\ No newline at end of file
@@ -1,8 +1,12 @@
 package com.tobiasmaneschijn.mcjsmod.javascript.interfaces;
 
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.DiskUsage;
+import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.FileStat;
 import com.tobiasmaneschijn.mcjsmod.javascript.filesystem.FileSystemException;
 import net.minecraft.nbt.CompoundTag;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public interface IFileSystem {
@@ -10,13 +14,49 @@ public interface IFileSystem {
     void createDirectory(String path) throws FileSystemException;
     String readFile(String path) throws FileSystemException;
     void writeFile(String path, String content) throws FileSystemException;
+    // Binary contents. Reads return a read-only buffer, a view of the stored bytes only when they fit
+    // in one chunk and a copy otherwise; writes take ownership of the given buffer
+    ByteBuffer readBytes(String path) throws FileSystemException;
+    void writeBytes(String path, ByteBuffer data) throws FileSystemException;
+    // Reads the contents as they are when the stream is opened
+    InputStream newInputStream(String path) throws FileSystemException;
+    // Streaming access. Modes are "r" (read), "w" (truncate, then append) and "a" (append)
+    int open(String path, String mode) throws FileSystemException;
+    ByteBuffer read(int handle, int length) throws FileSystemException;
+    void append(int handle, ByteBuffer data) throws FileSystemException;
+    long seek(int handle, long position) throws FileSystemException;
+    long tell(int handle) throws FileSystemException;
+    void close(int handle) throws FileSystemException;
+    void closeAllHandles();
     void deleteFile(String path) throws FileSystemException;
     void deleteDirectory(String path) throws FileSystemException;
     List<String> listFiles(String path) throws FileSystemException;
+    // Names in sorted order: up to limit of them after the given name (exclusive, null to start
+    // at the beginning) that start with prefix (null for any). The last name is the next cursor
+    List<String> list(String path, String after, int limit, String prefix) throws FileSystemException;
+    // Full paths of up to limit entries whose path starts with pathPrefix, e.g. "/logs/2024-"
+    List<String> search(String pathPrefix, int limit) throws FileSystemException;
     boolean exists(String path);
     boolean isDirectory(String path);
     void move(String sourcePath, String destinationPath) throws FileSystemException;
+    // Directories too; a copied directory shares its nodes with the original until either changes
     void copy(String sourcePath, String destinationPath) throws FileSystemException;
+    // Named copies of the whole tree, taken in O(1) the same way. They don't count towards the
+    // quota; a computer has at most a few, and none can be taken while a file is open for writing
+    void snapshot(String name) throws FileSystemException;
+    // Replaces the whole tree with the snapshot's, which is kept
+    void restore(String name) throws FileSystemException;
+    void deleteSnapshot(String name) throws FileSystemException;
+    List<String> listSnapshots();
+    FileStat stat(String path) throws FileSystemException;
+    // Kept up to date on every change, so this never walks the tree
+    DiskUsage getUsage();
+    // Changes that would take usage past this many bytes fail; ones that free space always succeed
+    void setQuota(long bytes);
     void save(CompoundTag tag);
     void load(CompoundTag tag);
+    // Lets go of contents shared with other computers; the file system is not used afterwards
+    void release();
+    // Like release, and deletes the stored files too; for when the computer itself is destroyed
+    void destroy();
 }
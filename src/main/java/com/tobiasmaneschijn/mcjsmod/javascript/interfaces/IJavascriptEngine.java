@@ -1,10 +1,11 @@
 package com.tobiasmaneschijn.mcjsmod.javascript.interfaces;
 
+import com.tobiasmaneschijn.mcjsmod.javascript.binding.HostBinder;
+import com.tobiasmaneschijn.mcjsmod.javascript.scheduler.ComputerEventLoop;
 import org.graalvm.polyglot.Context;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
-import java.util.function.Function;
 
 public interface IJavascriptEngine {
     void initialize();
@@ -12,17 +13,30 @@ public interface IJavascriptEngine {
 
     CompletableFuture<Void> evaluate(String code);
 
+    CompletableFuture<Void> evaluate(String name, String code);
+
     CompletableFuture<Void> executeScript();
+
+    // Runs a task on the thread that currently owns this engine's context
+    CompletableFuture<Void> runTask(Runnable task);
+
+    ComputerEventLoop getEventLoop();
     void shutdown();
 
     void subscribeToOutput(Consumer<String> outputConsumer);
     void subscribeToError(Consumer<String> errorConsumer);
+    // Called after the context was forcibly closed and has to be rebuilt
+    void subscribeToReset(Runnable resetListener);
+    // Runs once when the current context is closed, by a reset or a shutdown; for releasing host resources
+    void onContextClosed(Runnable hook);
     void provideInput(String input);
 
     boolean isRunning();
 
-    // New method to bind Java functions to JavaScript
-    void bindFunction(String name, Function<Object[], Object> function);
+    // Typed binders for host functions, either on the global scope or on a named global object
+    HostBinder getGlobalBinder();
+
+    HostBinder bindObject(String name);
 
     Context getContext();
 }
\ No newline at end of file
@@ -0,0 +1,230 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of lines between two pipeline stages. Host stages use the blocking
+ * {@link #put}/{@link #take} calls on their own thread; script stages, which must never block
+ * the computer's worker, use {@link #offer}/{@link #poll} and register a one-shot waiter that
+ * fires once they can make progress. A full channel stalls its writer, which is what keeps a
+ * fast producer from running ahead of a slow consumer.
+ */
+public class LineChannel {
+    public enum Offer { ACCEPTED, FULL, CLOSED }
+
+    private final int capacity;
+    private final ArrayDeque<String> lines;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Writer finished (end of stream) and reader gone (writes are refused)
+    private boolean writeClosed;
+    private boolean readClosed;
+    private String error;
+    private Runnable readWaiter;
+    private Runnable writeWaiter;
+
+    public LineChannel(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.lines = new ArrayDeque<>(this.capacity);
+    }
+
+    // Blocks while the channel is full; false once the reader has gone away
+    public boolean put(String line) throws InterruptedException {
+        Runnable waiter;
+        lock.lock();
+        try {
+            while (lines.size() >= capacity && !readClosed && !writeClosed) {
+                notFull.await();
+            }
+            if (readClosed || writeClosed) {
+                return false;
+            }
+            lines.addLast(line);
+            notEmpty.signal();
+            waiter = takeReadWaiter();
+        } finally {
+            lock.unlock();
+        }
+        run(waiter);
+        return true;
+    }
+
+    // Blocks until at least one line is available; null at the end of the stream
+    public List<String> take(int max) throws InterruptedException {
+        Runnable waiter;
+        List<String> batch;
+        lock.lock();
+        try {
+            while (lines.isEmpty() && !writeClosed && !readClosed) {
+                notEmpty.await();
+            }
+            if (lines.isEmpty() || readClosed) {
+                return null;
+            }
+            batch = drain(max);
+            waiter = takeWriteWaiter();
+        } finally {
+            lock.unlock();
+        }
+        run(waiter);
+        return batch;
+    }
+
+    public Offer offer(String line) {
+        Runnable waiter;
+        lock.lock();
+        try {
+            if (readClosed || writeClosed) {
+                return Offer.CLOSED;
+            }
+            if (lines.size() >= capacity) {
+                return Offer.FULL;
+            }
+            lines.addLast(line);
+            notEmpty.signal();
+            waiter = takeReadWaiter();
+        } finally {
+            lock.unlock();
+        }
+        run(waiter);
+        return Offer.ACCEPTED;
+    }
+
+    /**
+     * Returns the buffered lines (at most {@code max}), an empty list when none have arrived
+     * yet, or null at the end of the stream.
+     */
+    public List<String> poll(int max) {
+        Runnable waiter;
+        List<String> batch;
+        lock.lock();
+        try {
+            if (lines.isEmpty()) {
+                return writeClosed || readClosed ? null : List.of();
+            }
+            batch = drain(max);
+            waiter = takeWriteWaiter();
+        } finally {
+            lock.unlock();
+        }
+        run(waiter);
+        return batch;
+    }
+
+    // Runs the waiter once lines are available or the stream ended, immediately if that is already the case
+    public void onReadable(Runnable waiter) {
+        lock.lock();
+        try {
+            if (lines.isEmpty() && !writeClosed && !readClosed) {
+                readWaiter = waiter;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        waiter.run();
+    }
+
+    // Runs the waiter once there is room or the reader has gone away
+    public void onWritable(Runnable waiter) {
+        lock.lock();
+        try {
+            if (lines.size() >= capacity && !readClosed && !writeClosed) {
+                writeWaiter = waiter;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        waiter.run();
+    }
+
+    // The writer is done; the reader still gets the buffered lines
+    public void closeWrite() {
+        close(false);
+    }
+
+    // The writer failed; the reader sees the error once it has drained the buffered lines
+    public void fail(String message) {
+        lock.lock();
+        try {
+            if (error == null) {
+                error = message;
+            }
+        } finally {
+            lock.unlock();
+        }
+        close(false);
+    }
+
+    // The reader is gone, so the writer should stop producing
+    public void closeRead() {
+        close(true);
+    }
+
+    public String getError() {
+        lock.lock();
+        try {
+            return error;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void close(boolean read) {
+        Runnable readerWaiter;
+        Runnable writerWaiter;
+        lock.lock();
+        try {
+            if (read) {
+                readClosed = true;
+                lines.clear();
+            } else {
+                writeClosed = true;
+            }
+            notEmpty.signalAll();
+            notFull.signalAll();
+            readerWaiter = takeReadWaiter();
+            writerWaiter = takeWriteWaiter();
+        } finally {
+            lock.unlock();
+        }
+        run(readerWaiter);
+        run(writerWaiter);
+    }
+
+    private List<String> drain(int max) {
+        int count = Math.min(max, lines.size());
+        List<String> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(lines.pollFirst());
+        }
+        notFull.signal();
+        return batch;
+    }
+
+    private Runnable takeReadWaiter() {
+        Runnable waiter = readWaiter;
+        readWaiter = null;
+        return waiter;
+    }
+
+    private Runnable takeWriteWaiter() {
+        Runnable waiter = writeWaiter;
+        writeWaiter = null;
+        return waiter;
+    }
+
+    // Waiters are run outside the lock; they only post work to the computer's event loop
+    private static void run(Runnable waiter) {
+        if (waiter != null) {
+            waiter.run();
+        }
+    }
+}
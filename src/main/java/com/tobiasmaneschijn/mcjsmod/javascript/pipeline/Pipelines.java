@@ -0,0 +1,111 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.pipeline;
+
+import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+import com.tobiasmaneschijn.mcjsmod.javascript.command.Coreutils;
+import com.tobiasmaneschijn.mcjsmod.javascript.command.LineSource;
+import com.tobiasmaneschijn.mcjsmod.javascript.interfaces.IFileSystem;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs host-native pipeline segments on their own threads, reading from and writing to
+ * {@link LineChannel}s. The threads block on the channels, never on a computer's worker.
+ * Each computer runs a few segments at most, and the whole server at most {@link #MAX_THREADS}.
+ */
+public class Pipelines {
+    public static final int BATCH_SIZE = 64;
+    // Segments wait on each other, so one that can't get a thread is refused rather than queued
+    private static final int MAX_THREADS = 64;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static ExecutorService executor;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(0, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+                Thread thread = new Thread(task, "MCJS-Pipeline-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Starts the given native stages reading from {@code input} (or nothing when it is null) and
+     * writing to {@code output}. When the segment finishes, early or not, the output is ended
+     * and the input released so upstream stages stop too. {@code onExit} runs afterwards.
+     * Throws, without running anything, when the server already runs as many segments as it allows.
+     */
+    public static void startNative(List<String> stages, LineChannel input, LineChannel output,
+                                   IFileSystem fs, String workingDirectory, Runnable onExit) {
+        try {
+            getExecutor().execute(() -> run(stages, input, output, fs, workingDirectory, onExit));
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Too many pipelines running on this server");
+        }
+    }
+
+    private static void run(List<String> stages, LineChannel input, LineChannel output,
+                            IFileSystem fs, String workingDirectory, Runnable onExit) {
+        try {
+            LineSource source = Coreutils.pipeline(stages, input == null ? LineSource.EMPTY : fromChannel(input), fs, workingDirectory);
+            String line;
+            while ((line = source.nextLine()) != null) {
+                if (!output.put(line)) {
+                    break;
+                }
+            }
+            output.closeWrite();
+        } catch (InterruptedException e) {
+            output.closeWrite();
+        } catch (Exception e) {
+            output.fail(e.getMessage() != null ? e.getMessage() : e.toString());
+        } finally {
+            if (input != null) {
+                input.closeRead();
+            }
+            onExit.run();
+        }
+    }
+
+    private static LineSource fromChannel(LineChannel channel) {
+        return new LineSource() {
+            private List<String> batch = List.of();
+            private int index = 0;
+
+            @Override
+            public String nextLine() {
+                while (index >= batch.size()) {
+                    try {
+                        batch = channel.take(BATCH_SIZE);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                    if (batch == null) {
+                        batch = List.of();
+                        return null;
+                    }
+                    index = 0;
+                }
+                return batch.get(index++);
+            }
+        };
+    }
+
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            MCJSMod.LOGGER.info("Stopping pipeline threads");
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.scheduler;
+
+import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Event loop for a single computer. Macrotasks (input, host callbacks, expired timers) are run
+ * one at a time on the computer's {@link ComputerTaskQueue}, so everything touching the context
+ * happens on the worker that currently owns it. GraalJS drains the promise job queue whenever
+ * control returns to the host, so each macrotask ends with its microtasks already run.
+ *
+ * <p>Timers of all computers live in one {@link TimingWheel} driven by a single clock thread, so
+ * setting and clearing a timer is O(1) however many are pending. An idle computer waiting on a
+ * timer or on input costs nothing.
+ */
+public class ComputerEventLoop {
+    private static final long TIMER_TICK_MS = 10;
+
+    // One wheel and one clock thread for the timers of every computer
+    private static final TimingWheel timerWheel = new TimingWheel(TIMER_TICK_MS, ComputerEventLoop::dispatchExpired);
+    private static Thread clock;
+
+    private final ComputerTaskQueue taskQueue;
+    private final Map<Integer, Timer> timers = new ConcurrentHashMap<>();
+    private int nextTimerId = 1;
+
+    private static class Timer extends TimingWheel.Timeout {
+        final ComputerEventLoop loop;
+        final int id;
+        final Runnable callback;
+        final long intervalMs;
+        volatile boolean cancelled;
+
+        Timer(ComputerEventLoop loop, int id, Runnable callback, long intervalMs) {
+            this.loop = loop;
+            this.id = id;
+            this.callback = callback;
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    public ComputerEventLoop(ComputerTaskQueue taskQueue) {
+        this.taskQueue = taskQueue;
+    }
+
+    public void post(Runnable macrotask) {
+        taskQueue.execute(macrotask);
+    }
+
+    /**
+     * Schedules a callback after the given delay. With a positive interval the callback repeats
+     * until cleared. Returns the timer id used by {@link #clearTimer(int)}.
+     */
+    public synchronized int setTimer(Runnable callback, long delayMs, long intervalMs) {
+        int id = nextTimerId++;
+        Timer timer = new Timer(this, id, callback, intervalMs);
+        timers.put(id, timer);
+        schedule(timer, delayMs);
+        return id;
+    }
+
+    public void clearTimer(int id) {
+        Timer timer = timers.remove(id);
+        if (timer != null) {
+            timer.cancelled = true;
+            timerWheel.cancel(timer);
+        }
+    }
+
+    public void clearTimers() {
+        for (Integer id : timers.keySet()) {
+            clearTimer(id);
+        }
+    }
+
+    public boolean hasPendingTimers() {
+        return !timers.isEmpty();
+    }
+
+    public boolean hasPendingTasks() {
+        return taskQueue.hasPendingTasks() || taskQueue.getRunningThread() != null;
+    }
+
+    public void close() {
+        clearTimers();
+        taskQueue.close();
+    }
+
+    private static void schedule(Timer timer, long delayMs) {
+        ensureClockStarted();
+        timerWheel.schedule(timer, delayMs);
+    }
+
+    // Clock thread: hand each computer's expired timers to its own queue as a single macrotask
+    private static void dispatchExpired(List<TimingWheel.Timeout> expired) {
+        Map<ComputerEventLoop, List<Timer>> byLoop = new HashMap<>();
+        for (TimingWheel.Timeout timeout : expired) {
+            Timer timer = (Timer) timeout;
+            if (!timer.cancelled) {
+                byLoop.computeIfAbsent(timer.loop, loop -> new ArrayList<>()).add(timer);
+            }
+        }
+        byLoop.forEach((loop, batch) -> {
+            try {
+                loop.post(() -> loop.runTimers(batch));
+            } catch (RejectedExecutionException e) {
+                batch.forEach(timer -> loop.timers.remove(timer.id));
+            }
+        });
+    }
+
+    private void runTimers(List<Timer> batch) {
+        for (Timer timer : batch) {
+            if (timer.cancelled) {
+                continue;
+            }
+            try {
+                timer.callback.run();
+            } catch (Exception e) {
+                MCJSMod.LOGGER.error("Error in timer callback on computer " + taskQueue.getName(), e);
+            }
+            if (timer.intervalMs > 0 && !timer.cancelled) {
+                schedule(timer, timer.intervalMs);
+            } else {
+                timers.remove(timer.id);
+            }
+        }
+    }
+
+    private static synchronized void ensureClockStarted() {
+        if (clock != null) {
+            return;
+        }
+        clock = new Thread(ComputerEventLoop::clockLoop, "MCJS-Timer");
+        clock.setDaemon(true);
+        clock.start();
+    }
+
+    private static void clockLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                timerWheel.awaitTimeouts();
+                Thread.sleep(TIMER_TICK_MS);
+                timerWheel.advance(System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            // Server stopping
+        }
+    }
+
+    public static int getPendingTimerCount() {
+        return timerWheel.size();
+    }
+
+    public static synchronized void shutdownClock() {
+        if (clock != null) {
+            clock.interrupt();
+            clock = null;
+        }
+    }
+}
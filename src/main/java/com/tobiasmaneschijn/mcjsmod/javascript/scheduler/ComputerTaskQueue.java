@@ -0,0 +1,197 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.scheduler;
+
+import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serial work queue for a single computer. Tasks submitted here run one at a time, in order,
+ * on whichever {@link ScriptScheduler} worker picks the queue up, so a computer's context is
+ * never entered from two threads at once.
+ */
+public class ComputerTaskQueue implements Executor {
+    private static final ExecutionLimitHandler NO_LIMIT_HANDLER = new ExecutionLimitHandler() {
+        @Override
+        public void onExecutionTimeout(long limitMs) {
+        }
+
+        @Override
+        public void onMemoryWarning(long usedBytes, long shareBytes) {
+        }
+
+        @Override
+        public void onMemoryExceeded(long usedBytes, long shareBytes) {
+        }
+    };
+
+    private final String name;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // True while the queue is waiting in the scheduler's ready queue or being run by a worker
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+    // The task running right now, or null while idle. Thread and starting allocation counter are
+    // published together, so the watchdog never pairs one task's thread with another's counter
+    private final AtomicReference<RunningTask> runningTask = new AtomicReference<>();
+    // System.nanoTime() at which the current task started, or 0 while idle
+    private volatile long taskStartNanos = 0;
+    private final AtomicBoolean timedOut = new AtomicBoolean(false);
+    private volatile ExecutionLimitHandler limitHandler;
+
+    // Bytes allocated by finished tasks, decayed by the memory monitor
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicBoolean memoryWarned = new AtomicBoolean(false);
+    private final AtomicBoolean memoryExceeded = new AtomicBoolean(false);
+
+    // startAllocatedBytes is the worker's thread allocation counter when the task started
+    private record RunningTask(Thread thread, long startAllocatedBytes, boolean charged) {
+    }
+
+    private record UnchargedTask(Runnable task) implements Runnable {
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    ComputerTaskQueue(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (closed) {
+            throw new RejectedExecutionException("Task queue closed: " + name);
+        }
+        tasks.add(task);
+        if (scheduled.compareAndSet(false, true)) {
+            ScriptScheduler.enqueue(this);
+        }
+    }
+
+    /**
+     * Queues a task whose allocations are not charged to the computer, for booting its context.
+     * It is still subject to the execution time limit.
+     */
+    public void executeUncharged(Runnable task) {
+        execute(new UnchargedTask(task));
+    }
+
+    /**
+     * Runs a single task. Returns true if the queue still has work and should go back to the end
+     * of the ready queue, which gives round-robin fairness between computers.
+     */
+    boolean runNext() {
+        Runnable task = tasks.poll();
+        if (task != null && !closed) {
+            timedOut.set(false);
+            runningTask.set(new RunningTask(Thread.currentThread(), ScriptMemoryMonitor.currentThreadAllocatedBytes(), !(task instanceof UnchargedTask)));
+            taskStartNanos = System.nanoTime();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                MCJSMod.LOGGER.error("Uncaught error in task for computer " + name, t);
+            } finally {
+                taskStartNanos = 0;
+                RunningTask finished = runningTask.getAndSet(null);
+                if (finished.charged()) {
+                    allocatedBytes.addAndGet(ScriptMemoryMonitor.currentThreadAllocatedBytes() - finished.startAllocatedBytes());
+                }
+            }
+        }
+
+        if (!tasks.isEmpty() && !closed) {
+            return true;
+        }
+        scheduled.set(false);
+        // A task may have been added between the check above and clearing the flag
+        return !tasks.isEmpty() && !closed && scheduled.compareAndSet(false, true);
+    }
+
+    public void close() {
+        closed = true;
+        tasks.clear();
+        ScriptWatchdog.unwatch(this);
+    }
+
+    /**
+     * Sets the handler the watchdog calls when this queue runs past the configured execution time
+     * or memory share. It is called from the watchdog thread.
+     */
+    public void setLimitHandler(ExecutionLimitHandler limitHandler) {
+        this.limitHandler = limitHandler;
+    }
+
+    ExecutionLimitHandler getLimitHandler() {
+        ExecutionLimitHandler handler = limitHandler;
+        return handler != null ? handler : NO_LIMIT_HANDLER;
+    }
+
+    long getTaskStartNanos() {
+        return taskStartNanos;
+    }
+
+    boolean markTimedOut() {
+        return timedOut.compareAndSet(false, true);
+    }
+
+    /**
+     * Recent allocation charged to this computer, including the task that is running right now.
+     */
+    public long getMemoryUsage() {
+        long used = allocatedBytes.get();
+        RunningTask task = runningTask.get();
+        if (task != null && task.charged()) {
+            used += Math.max(0, ScriptMemoryMonitor.threadAllocatedBytes(task.thread()) - task.startAllocatedBytes());
+        }
+        return used;
+    }
+
+    void decayAllocatedBytes() {
+        allocatedBytes.updateAndGet(bytes -> bytes / 2);
+    }
+
+    // Forget past allocation, used after the context was reset
+    public void resetMemoryUsage() {
+        allocatedBytes.set(0);
+        RunningTask task = runningTask.get();
+        if (task != null) {
+            // Left alone if the task finished meanwhile; it charged what it allocated already
+            runningTask.compareAndSet(task, new RunningTask(task.thread(), ScriptMemoryMonitor.threadAllocatedBytes(task.thread()), task.charged()));
+        }
+    }
+
+    boolean markMemoryWarned() {
+        return memoryWarned.compareAndSet(false, true);
+    }
+
+    boolean markMemoryExceeded() {
+        return memoryExceeded.compareAndSet(false, true);
+    }
+
+    void clearMemoryFlags() {
+        memoryWarned.set(false);
+        memoryExceeded.set(false);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean hasPendingTasks() {
+        return !tasks.isEmpty();
+    }
+
+    public Thread getRunningThread() {
+        RunningTask task = runningTask.get();
+        return task != null ? task.thread() : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
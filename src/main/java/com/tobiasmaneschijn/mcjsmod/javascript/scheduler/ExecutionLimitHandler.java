@@ -0,0 +1,13 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.scheduler;
+
+/**
+ * Receives limit violations for a computer's task queue. Called from the watchdog thread, so
+ * implementations must not touch the context other than to interrupt or close it.
+ */
+public interface ExecutionLimitHandler {
+    void onExecutionTimeout(long limitMs);
+
+    void onMemoryWarning(long usedBytes, long shareBytes);
+
+    void onMemoryExceeded(long usedBytes, long shareBytes);
+}
@@ -0,0 +1,8 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.scheduler;
+
+public enum ExecutionMode {
+    // Scripts run on the scheduler's background workers
+    THREADED,
+    // Scripts run on the server thread, within a fixed time budget per tick
+    TICK
+}
@@ -0,0 +1,87 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.scheduler;
+
+import com.tobiasmaneschijn.mcjsmod.Config;
+import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+
+/**
+ * Per-computer heap accounting. Bytes allocated by the worker thread while it runs a computer's
+ * task are charged to that computer. Usage halves every accounting window, so it reflects recent
+ * allocation rather than an ever-growing total.
+ *
+ * <p>{@link Config#MAX_MEMORY_USAGE} is the budget for all computers together; each loaded
+ * computer gets an equal share, but never less than {@link Config#MIN_MEMORY_SHARE}, since just
+ * booting a context allocates a fair amount. Tasks queued with
+ * {@link ComputerTaskQueue#executeUncharged} are not charged at all. Going over the share
+ * triggers a warning, going over twice the share resets the computer's context.
+ */
+public class ScriptMemoryMonitor {
+    private static final long WINDOW_MS = 10_000;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+    private static long lastDecay = System.currentTimeMillis();
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            if (!bean.isThreadAllocatedMemoryEnabled()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return bean;
+        }
+        MCJSMod.LOGGER.warn("Thread allocation tracking not supported, script memory limits are disabled");
+        return null;
+    }
+
+    public static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    // Called on the worker thread right before and after a task runs
+    static long currentThreadAllocatedBytes() {
+        return THREAD_BEAN == null ? 0 : THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static long threadAllocatedBytes(Thread thread) {
+        return THREAD_BEAN == null || thread == null ? 0 : THREAD_BEAN.getThreadAllocatedBytes(thread.getId());
+    }
+
+    public static long getShareBytes(int computerCount) {
+        return Math.max(Config.MAX_MEMORY_USAGE.get() / Math.max(1, computerCount), Config.MIN_MEMORY_SHARE.get());
+    }
+
+    // Called from the watchdog thread on every scan
+    static void scan(Collection<ComputerTaskQueue> queues) {
+        if (THREAD_BEAN == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean decay = now - lastDecay >= WINDOW_MS;
+        if (decay) {
+            lastDecay = now;
+        }
+
+        long share = getShareBytes(queues.size());
+        for (ComputerTaskQueue queue : queues) {
+            if (decay) {
+                queue.decayAllocatedBytes();
+            }
+            long used = queue.getMemoryUsage();
+            if (used > share * 2) {
+                if (queue.markMemoryExceeded()) {
+                    MCJSMod.LOGGER.warn("Computer " + queue.getName() + " exceeded its memory share ("
+                            + used + " of " + share + " bytes), resetting it");
+                    queue.getLimitHandler().onMemoryExceeded(used, share);
+                }
+            } else if (used > share) {
+                if (queue.markMemoryWarned()) {
+                    queue.getLimitHandler().onMemoryWarning(used, share);
+                }
+            } else {
+                queue.clearMemoryFlags();
+            }
+        }
+    }
+}
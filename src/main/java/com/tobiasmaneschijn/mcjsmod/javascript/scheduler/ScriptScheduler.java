@@ -0,0 +1,153 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.scheduler;
+
+import com.tobiasmaneschijn.mcjsmod.Config;
+import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Central scheduler for all computer scripts. A fixed pool of workers, sized to the available
+ * cores, takes {@link ComputerTaskQueue}s from a shared ready queue and runs one task from each
+ * before putting it back at the end. At most {@link Config#MAX_CONCURRENT_SCRIPTS} tasks run at
+ * the same time, no matter how many computers are loaded.
+ *
+ * <p>In {@link ExecutionMode#TICK} mode no workers are started. Instead {@link #runTick()} runs
+ * ready queues on the server thread each tick, splitting {@link Config#TICK_BUDGET_MICROS}
+ * evenly between the computers that have work. Whatever does not fit waits for the next tick.
+ * The budget is only checked between tasks, so a single task is bounded by the watchdog
+ * instead, which stops it after {@link Config#TICK_TASK_LIMIT_MILLIS}. Host functions that
+ * would block, such as {@code javaRead}, fail in this mode rather than stall the server.
+ */
+public class ScriptScheduler {
+    // A queue always gets at least this long once it is picked, so tiny shares still make progress
+    private static final long MIN_SLICE_NANOS = 50_000;
+
+    private static final LinkedBlockingQueue<ComputerTaskQueue> readyQueue = new LinkedBlockingQueue<>();
+
+    private static Thread[] workers;
+    private static Semaphore activeScripts;
+    private static volatile boolean running = false;
+    private static volatile ExecutionMode mode = ExecutionMode.THREADED;
+
+    public static ComputerTaskQueue createQueue(String name) {
+        ComputerTaskQueue queue = new ComputerTaskQueue(name);
+        ScriptWatchdog.watch(queue);
+        return queue;
+    }
+
+    static void enqueue(ComputerTaskQueue queue) {
+        ensureStarted();
+        readyQueue.add(queue);
+    }
+
+    private static synchronized void ensureStarted() {
+        if (running) {
+            return;
+        }
+        mode = Config.EXECUTION_MODE.get();
+        running = true;
+        ScriptWatchdog.start();
+        if (mode == ExecutionMode.TICK) {
+            workers = new Thread[0];
+            MCJSMod.LOGGER.info("Started script scheduler in tick mode with a budget of " + Config.TICK_BUDGET_MICROS.get() + " us per tick");
+            return;
+        }
+
+        int workerCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int maxConcurrent = Config.MAX_CONCURRENT_SCRIPTS.get();
+        activeScripts = new Semaphore(maxConcurrent, true);
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(ScriptScheduler::workerLoop, "MCJS-Script-Worker-" + i);
+            worker.setDaemon(true);
+            workers[i] = worker;
+            worker.start();
+        }
+        MCJSMod.LOGGER.info("Started script scheduler with " + workerCount + " workers, max " + maxConcurrent + " concurrent scripts");
+    }
+
+    // The longest one task may run before the watchdog stops it
+    static long getTaskLimitMillis() {
+        long limit = Config.MAX_SCRIPT_EXECUTION_TIME.get();
+        return isTickMode() ? Math.min(limit, Config.TICK_TASK_LIMIT_MILLIS.get()) : limit;
+    }
+
+    public static boolean isTickMode() {
+        return running && mode == ExecutionMode.TICK;
+    }
+
+    /**
+     * Runs queued computer work on the calling (server) thread until this tick's budget is used
+     * up. Each queue gets an equal part of the remaining budget and goes back to the end of the
+     * ready queue if it still has work, so the next tick starts with the computers that missed out.
+     */
+    public static void runTick() {
+        if (!isTickMode()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long deadline = now + Config.TICK_BUDGET_MICROS.get() * 1000L;
+        while (now < deadline) {
+            ComputerTaskQueue queue = readyQueue.poll();
+            if (queue == null) {
+                break;
+            }
+            int waiting = readyQueue.size() + 1;
+            long sliceEnd = Math.min(deadline, now + Math.max(MIN_SLICE_NANOS, (deadline - now) / waiting));
+            boolean more;
+            do {
+                more = queue.runNext();
+                now = System.nanoTime();
+            } while (more && now < sliceEnd);
+            if (more) {
+                readyQueue.add(queue);
+            }
+        }
+    }
+
+    private static void workerLoop() {
+        Semaphore permits = activeScripts;
+        while (running) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                ComputerTaskQueue queue = readyQueue.take();
+                if (queue.runNext()) {
+                    readyQueue.add(queue);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    public static int getWorkerCount() {
+        Thread[] current = workers;
+        return current == null ? 0 : current.length;
+    }
+
+    public static int getReadyQueueSize() {
+        return readyQueue.size();
+    }
+
+    public static synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        mode = ExecutionMode.THREADED;
+        ScriptWatchdog.stop();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        workers = null;
+        readyQueue.clear();
+        MCJSMod.LOGGER.info("Script scheduler stopped");
+    }
+}
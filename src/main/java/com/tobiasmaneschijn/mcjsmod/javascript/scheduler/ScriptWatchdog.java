@@ -0,0 +1,111 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.scheduler;
+
+import com.tobiasmaneschijn.mcjsmod.Config;
+import com.tobiasmaneschijn.mcjsmod.MCJSMod;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single timer thread that watches every computer's task queue. When a task has been running
+ * longer than {@link Config#MAX_SCRIPT_EXECUTION_TIME}, or {@link Config#TICK_TASK_LIMIT_MILLIS}
+ * on the server thread in tick mode, the queue's limit handler is called
+ * once, which is expected to interrupt or cancel the context. Each scan also runs the
+ * {@link ScriptMemoryMonitor}. Handlers must not block the scan; waiting for a script to
+ * actually stop is handed to {@link #runStopper(Runnable)}.
+ */
+public class ScriptWatchdog {
+    private static final long SCAN_INTERVAL_MS = 50;
+    private static final int STOPPER_THREADS = 4;
+    private static final long STOPPER_KEEP_ALIVE_SECONDS = 30;
+
+    private static final Set<ComputerTaskQueue> watchedQueues = ConcurrentHashMap.newKeySet();
+    private static Thread thread;
+    private static ThreadPoolExecutor stoppers;
+    private static volatile boolean running = false;
+
+    public static Collection<ComputerTaskQueue> getWatchedQueues() {
+        return Collections.unmodifiableSet(watchedQueues);
+    }
+
+    static void watch(ComputerTaskQueue queue) {
+        watchedQueues.add(queue);
+    }
+
+    static void unwatch(ComputerTaskQueue queue) {
+        watchedQueues.remove(queue);
+    }
+
+    static synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(ScriptWatchdog::scanLoop, "MCJS-Watchdog");
+        thread.setDaemon(true);
+        thread.start();
+        stoppers = new ThreadPoolExecutor(STOPPER_THREADS, STOPPER_THREADS, STOPPER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+                    Thread stopper = new Thread(task, "MCJS-Watchdog-Stopper");
+                    stopper.setDaemon(true);
+                    return stopper;
+                });
+        stoppers.allowCoreThreadTimeOut(true);
+    }
+
+    static synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        if (stoppers != null) {
+            stoppers.shutdownNow();
+            stoppers = null;
+        }
+    }
+
+    /**
+     * Runs a blocking part of stopping a script, such as waiting for an interrupt to take effect,
+     * off the watchdog thread so the other computers are still watched meanwhile.
+     */
+    public static synchronized void runStopper(Runnable stopper) {
+        if (stoppers != null) {
+            stoppers.execute(stopper);
+        }
+    }
+
+    private static void scanLoop() {
+        while (running) {
+            try {
+                Thread.sleep(SCAN_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long limitMs = ScriptScheduler.getTaskLimitMillis();
+            long limitNanos = TimeUnit.MILLISECONDS.toNanos(limitMs);
+            long now = System.nanoTime();
+            for (ComputerTaskQueue queue : watchedQueues) {
+                long startedAt = queue.getTaskStartNanos();
+                if (startedAt != 0 && now - startedAt > limitNanos && queue.markTimedOut()) {
+                    MCJSMod.LOGGER.warn("Script on computer " + queue.getName() + " exceeded " + limitMs + " ms, stopping it");
+                    try {
+                        queue.getLimitHandler().onExecutionTimeout(limitMs);
+                    } catch (Exception e) {
+                        MCJSMod.LOGGER.error("Error stopping script on computer " + queue.getName(), e);
+                    }
+                }
+            }
+            try {
+                ScriptMemoryMonitor.scan(watchedQueues);
+            } catch (Exception e) {
+                MCJSMod.LOGGER.error("Error scanning script memory usage", e);
+            }
+        }
+    }
+}
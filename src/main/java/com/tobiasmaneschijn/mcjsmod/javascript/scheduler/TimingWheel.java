@@ -0,0 +1,187 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical hashed timing wheel. Four levels of 256 slots each cover 256^4 ticks, which at the
+ * default 10 ms resolution is more than a year. Scheduling and cancelling are O(1): a timeout is
+ * linked into the slot of the lowest level that can hold its deadline and moved down a level
+ * when that level's slot comes around (the same cascading scheme as the classic Linux timer
+ * wheel). Expired timeouts are handed to the expiry handler in one batch per advance.
+ */
+public class TimingWheel {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * A pending timeout. Subclass it to carry whatever the expiry handler needs; the link fields
+     * are owned by the wheel.
+     */
+    public static class Timeout {
+        private long deadlineTick;
+        private Timeout prev;
+        private Timeout next;
+        private int level = -1;
+        private int slot;
+
+        public boolean isScheduled() {
+            return level >= 0;
+        }
+    }
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Consumer<List<Timeout>> expiryHandler;
+    private final Timeout[][] slots = new Timeout[LEVELS][SLOTS];
+    // Last tick whose slot has been processed
+    private long currentTick = 0;
+    private int size = 0;
+
+    public TimingWheel(long tickMs, Consumer<List<Timeout>> expiryHandler) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.startNanos = System.nanoTime();
+        this.expiryHandler = expiryHandler;
+    }
+
+    public synchronized void schedule(Timeout timeout, long delayMs) {
+        if (timeout.isScheduled()) {
+            unlink(timeout);
+        }
+        if (size == 0) {
+            // Nothing was pending, so the clock may not have advanced the wheel for a while
+            currentTick = Math.max(currentTick, toTick(System.nanoTime()));
+        }
+        long delayTicks = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delayMs) + tickNanos - 1) / tickNanos);
+        timeout.deadlineTick = Math.max(currentTick + 1, toTick(System.nanoTime()) + delayTicks);
+        insert(timeout);
+        size++;
+        notifyAll();
+    }
+
+    public synchronized boolean cancel(Timeout timeout) {
+        if (!timeout.isScheduled()) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Processes every tick up to the given time and passes the expired timeouts to the handler.
+     * The handler is called without holding the wheel's lock.
+     */
+    public void advance(long nowNanos) {
+        List<Timeout> expired = new ArrayList<>();
+        synchronized (this) {
+            long targetTick = toTick(nowNanos);
+            if (size == 0) {
+                currentTick = Math.max(currentTick, targetTick);
+                return;
+            }
+            while (currentTick < targetTick && size > 0) {
+                currentTick++;
+                int index = (int) (currentTick & SLOT_MASK);
+                if (index == 0) {
+                    cascade(1);
+                }
+                Timeout timeout = slots[0][index];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    unlink(timeout);
+                    expired.add(timeout);
+                    timeout = next;
+                }
+            }
+            if (size == 0) {
+                currentTick = Math.max(currentTick, targetTick);
+            }
+        }
+        if (!expired.isEmpty()) {
+            expiryHandler.accept(expired);
+        }
+    }
+
+    /**
+     * Blocks until the wheel has at least one timeout or the thread is interrupted, so the driving
+     * clock thread does not spin while nothing is scheduled.
+     */
+    public synchronized void awaitTimeouts() throws InterruptedException {
+        while (size == 0) {
+            wait();
+        }
+    }
+
+    public long getTickMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    private long toTick(long nanos) {
+        return (nanos - startNanos) / tickNanos;
+    }
+
+    // Moves the current slot of the given level down, then the next level up if this one wrapped
+    private void cascade(int level) {
+        if (level >= LEVELS) {
+            return;
+        }
+        int index = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Timeout timeout = slots[level][index];
+        slots[level][index] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.prev = null;
+            timeout.next = null;
+            insert(timeout);
+            timeout = next;
+        }
+        if (index == 0) {
+            cascade(level + 1);
+        }
+    }
+
+    private void insert(Timeout timeout) {
+        long delta = Math.max(0, timeout.deadlineTick - currentTick);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        // Deadlines beyond the last level are parked at its far end and cascaded again later
+        long tick = level == LEVELS - 1 && delta >= 1L << (SLOT_BITS * LEVELS)
+                ? currentTick + (1L << (SLOT_BITS * LEVELS)) - 1
+                : timeout.deadlineTick;
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = slots[level][slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.level = -1;
+        size--;
+    }
+}
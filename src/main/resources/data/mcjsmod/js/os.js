@@ -4,7 +4,8 @@ function delay(ms) {
     return new Promise(resolve => setTimeout(resolve, ms));
 }
 
-let currentDir = '/';
+// Restored from the computer so the shell resumes where it was after hibernation
+let currentDir = system.getWorkingDirectory() || '/';
 
 function changeDir(dir) {
     if (dir.startsWith('/')) {
@@ -24,17 +25,21 @@ function changeDir(dir) {
         }
     }
     currentDir = '/' + normalizedParts.join('/');
+    system.setWorkingDirectory(currentDir);
     console.log("Current directory: " + currentDir);
 }
 
 async function processCommand(input) {
     let outputFile = null;
+    let outputMode = 'w';
 
-    // Check for output redirection with '>'
+    // Check for output redirection with '>' (replace) or '>>' (append)
     if (input.includes('>')) {
-        const parts = input.split('>').map(part => part.trim());
+        const appending = input.includes('>>');
+        const parts = input.split(appending ? '>>' : '>').map(part => part.trim());
         input = parts[0];  // The command part
         outputFile = parts[1];  // The file to write the output to
+        outputMode = appending ? 'a' : 'w';
 
         if (!outputFile) {
             console.error("Error: No output file specified after '>'.");
@@ -48,62 +53,124 @@ async function processCommand(input) {
     }
 
     let commands = input.split('|').map(cmd => cmd.trim());
-    let output = '';
+    // Stages are connected by bounded host channels, so each one starts consuming lines as soon
+    // as they are produced and a fast stage waits for a slow one instead of buffering everything
+    let channels = [];
+    let channel = -1;
+
+    try {
+        for (let i = 0; i < commands.length; i++) {
+            // Consecutive host-native stages run as one streaming segment on the host
+            let end = i;
+            while (end < commands.length && coreutils.has(commands[end].split(' ')[0])) {
+                end++;
+            }
+            if (end > i) {
+                channel = pipe.run(commands.slice(i, end), channel, currentDir);
+                channels.push(channel);
+                i = end - 1;
+                continue;
+            }
 
-    for (let i = 0; i < commands.length; i++) {
-        let [command, ...args] = commands[i].split(' ');
-        let commandInput = i === 0 ? '' : output;
-        output = await executeCommand(command, args, commandInput);
-        if (output === false) {
-            return false;
+            let [command, ...args] = commands[i].split(' ');
+            let commandInput = channel < 0 ? emptyLines() : channelLines(channel);
+            let output = await executeCommand(command, args, commandInput);
+            if (output === false) {
+                return false;
+            }
+            // Commands return a string or an async iterable of lines
+            let lines = typeof output === 'string' ? output.split('\n') : (output || []);
+            channel = linesToChannel(lines);
+            channels.push(channel);
         }
-    }
 
-    // If there is an output redirection, write the output to the file
-    if (outputFile) {
-        if (output !== undefined && output !== null) {
-            fs.writeFile(outputFile, output);
-            console.log(`Output written to ${outputFile}`);
-        } else {
-            console.log(`No output to write to ${outputFile}`);
-        }
-    } else if (output !== undefined && output !== null && output.trim() !== '') {
-        console.log(output);
+        await drain(channel, outputFile, outputMode);
+    } finally {
+        // Stops every stage that is still producing, e.g. upstream of an early 'head'
+        channels.forEach(id => pipe.close(id));
     }
 
     return true;
 }
 
-async function executeCommand(command, args, input) {
-    switch (command) {
-        case 'ls':
-            let lsDir = args[0] ? args[0] : currentDir;
-            if (!lsDir.startsWith('/')) {
-                lsDir = currentDir + '/' + lsDir;
+const PIPE_CAPACITY = 256;
+
+async function* emptyLines() {
+}
+
+// Reads a host channel as an async iterator of lines; leaving the loop early closes it
+async function* channelLines(id) {
+    try {
+        let batch;
+        while ((batch = await pipe.read(id)) !== null) {
+            for (let j = 0; j < batch.length; j++) {
+                yield batch[j];
             }
-            let files = fs.listFiles(lsDir);
-            return files.join('\n');
+        }
+    } finally {
+        pipe.close(id);
+    }
+}
 
-        case 'cat':
-            let catFile = args[0];
-            if (catFile && !catFile.startsWith('/')) {
-                catFile = currentDir + '/' + catFile;
+// Pumps an iterable of lines into a new host channel, pausing whenever the channel is full
+function linesToChannel(lines) {
+    const id = pipe.open(PIPE_CAPACITY);
+    (async () => {
+        try {
+            for await (const line of lines) {
+                let accepted = pipe.write(id, String(line));
+                if (accepted !== true) {
+                    accepted = await accepted;
+                }
+                if (!accepted) {
+                    break; // The reader went away
+                }
             }
-            return fs.readFile(catFile);
+        } catch (error) {
+            pipe.fail(id, String(error));
+        } finally {
+            pipe.end(id);
+        }
+    })();
+    return id;
+}
+
+// Prints the last stage's output batch by batch as it arrives, or streams it into a file
+async function drain(id, outputFile, outputMode) {
+    const handle = outputFile ? fs.open(outputFile, outputMode) : -1;
+    let written = false;
+    try {
+        let batch;
+        while ((batch = await pipe.read(id)) !== null) {
+            const text = Array.from(batch).join('\n');
+            if (handle >= 0) {
+                fs.append(handle, (written ? '\n' : '') + text);
+                written = true;
+            } else if (text.trim() !== '') {
+                console.log(text);
+            }
+        }
+        if (handle >= 0) {
+            // '>>' keeps one line per command, like the shell always did
+            if (outputMode === 'a' && written) {
+                fs.append(handle, '\n');
+            }
+            console.log(`Output written to ${outputFile}`);
+        }
+    } finally {
+        if (handle >= 0) {
+            fs.close(handle);
+        }
+    }
+}
 
+async function executeCommand(command, args, input) {
+    switch (command) {
         case 'echo':
             return args.join(' ');
 
-        case 'grep':
-            if (!input) {
-                console.error("No input provided to grep");
-                return '';
-            }
-            let searchTerm = args[0];
-            return input.split('\n').filter(line => line.includes(searchTerm)).join('\n');
-
         case 'help':
-            return 'Available commands: ls, cat, run, help, exit, clear, cd, echo, mkdir, rmdir, rm, touch, cp, mv, pwd, grep';
+            return 'Available commands: ' + Array.from(coreutils.list()).concat(['help', 'exit', 'clear', 'cd', 'echo', 'mkdir', 'rmdir', 'rm', 'touch', 'cp [-r]', 'mv', 'pwd']).join(', ');
 
         case 'exit':
             console.log("Exiting shell");
@@ -153,16 +220,25 @@ async function executeCommand(command, args, input) {
             return "File created: " + touchPath;
 
         case 'cp':
-            let srcPath = args[0];
-            let destPath = args[1];
+            let recursive = args[0] === '-r' || args[0] === '-R';
+            let cpArgs = recursive ? args.slice(1) : args;
+            let srcPath = cpArgs[0];
+            let destPath = cpArgs[1];
             if (srcPath && !srcPath.startsWith('/')) {
                 srcPath = currentDir + '/' + srcPath;
             }
             if (destPath && !destPath.startsWith('/')) {
                 destPath = currentDir + '/' + destPath;
             }
-            let content = fs.readFile(srcPath);
-            fs.writeFile(destPath, content);
+            if (fs.isDirectory(srcPath) && !recursive) {
+                return "cp: omitting directory " + srcPath + " (use cp -r)";
+            }
+            // Into an existing directory, under the same name
+            if (fs.isDirectory(destPath)) {
+                destPath = destPath.replace(/\/+$/, '') + '/' + srcPath.replace(/\/+$/, '').split('/').pop();
+            }
+            // Shares the contents, and for a directory the whole tree, instead of reading and rewriting it
+            fs.copy(srcPath, destPath);
             return "Copied from " + srcPath + " to " + destPath;
 
         case 'mv':
@@ -0,0 +1,60 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.filesystem;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class VirtualFileSystemPathTest {
+    private static void assertNormalized(String expected, String path) {
+        String normalized = VirtualFileSystem.normalizePath(path);
+        assertEquals(expected, normalized, "normalizing \"" + path + "\"");
+        // Normalizing again changes nothing and returns the same string
+        assertSame(normalized, VirtualFileSystem.normalizePath(normalized));
+    }
+
+    // What the regex-based normalizer returned for these, and the single-pass one still does
+    @Test
+    void matchesTheRegexNormalizer() {
+        assertNormalized("/", "");
+        assertNormalized("/", "/");
+        assertNormalized("/", ".");
+        assertNormalized("/", "./");
+        assertNormalized("/", "//");
+        assertNormalized("/", "\\");
+        assertNormalized("/x", "x");
+        assertNormalized("/x", "./x");
+        assertNormalized("/x", "/x/");
+        assertNormalized("/x", "x/");
+        assertNormalized("/x", "//x");
+        assertNormalized("/x/y", "x/y");
+        assertNormalized("/x/y", "x//y");
+        assertNormalized("/x/y", "x/./y");
+        assertNormalized("/x/y", "/x/./y");
+        assertNormalized("/x/y", "\\x\\y");
+        assertNormalized("/x/y", "x\\y\\");
+        assertNormalized("/.x", ".x");
+        assertNormalized("/x/.y", "x/.y");
+    }
+
+    // ".." is kept as a name, as it always was; resolving it is up to the caller
+    @Test
+    void leavesParentReferencesAlone() {
+        assertNormalized("/..", "..");
+        assertNormalized("/../x", "../x");
+        assertNormalized("/x/../y", "/x/../y");
+    }
+
+    // The regex one kept a trailing "." or "/" in these ("/x/.", "/x/", "/a/./b"), naming an entry
+    // "." or "" that can't be created otherwise; every "." and empty segment is dropped now
+    @Test
+    void dropsDotAndEmptySegmentsTheRegexNormalizerKept() {
+        assertNormalized("/x", "x/.");
+        assertNormalized("/", "/.");
+        assertNormalized("/", "/./.");
+        assertNormalized("/x", "/x//");
+        assertNormalized("/x", "x//");
+        assertNormalized("/a/b", "a/./././b");
+        assertNormalized("/a/b", "./a/./b/.");
+    }
+}
@@ -0,0 +1,139 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.filesystem;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VirtualFileSystemQuotaTest {
+    // Every file and directory, the root included, counts as at least this much
+    private static final long MIN_ENTRY_BYTES = 256;
+
+    // Usage worked out from scratch by walking the tree, to hold the incrementally kept one against
+    private static DiskUsage recount(VirtualFileSystem fs) throws FileSystemException {
+        long[] totals = new long[2];
+        recount(fs, "/", totals);
+        return new DiskUsage(totals[0], fs.getUsage().quotaBytes(), totals[1]);
+    }
+
+    private static void recount(VirtualFileSystem fs, String path, long[] totals) throws FileSystemException {
+        FileStat stat = fs.stat(path);
+        if (stat.isDirectory()) {
+            totals[0] += MIN_ENTRY_BYTES;
+            for (String name : fs.listFiles(path)) {
+                recount(fs, path.equals("/") ? "/" + name : path + "/" + name, totals);
+            }
+        } else {
+            totals[0] += Math.max(stat.size(), MIN_ENTRY_BYTES);
+            totals[1]++;
+        }
+    }
+
+    private static ByteBuffer bytes(int count) {
+        return ByteBuffer.wrap(new byte[count]);
+    }
+
+    @Test
+    void writeOverTheQuotaFailsWithoutChangingAnything() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.writeFile("/a", "small");
+        DiskUsage before = fs.getUsage();
+        fs.setQuota(before.usedBytes() + 1000);
+        DiskUsage limited = fs.getUsage();
+
+        assertThrows(FileSystemException.class, () -> fs.writeBytes("/big", bytes(2000)));
+        assertThrows(FileSystemException.class, () -> fs.writeBytes("/a", bytes(2000)));
+        assertThrows(FileSystemException.class, () -> fs.writeBytes("/dir/big", bytes(2000)));
+
+        assertFalse(fs.exists("/big"));
+        assertEquals("small", fs.readFile("/a"));
+        assertEquals(limited, fs.getUsage());
+        assertEquals(recount(fs), fs.getUsage());
+    }
+
+    @Test
+    void writesUpToTheQuotaSucceed() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.setQuota(fs.getUsage().usedBytes() + 1000);
+
+        fs.writeBytes("/exact", bytes(1000));
+
+        assertEquals(0, fs.getUsage().freeBytes());
+        assertThrows(FileSystemException.class, () -> fs.createFile("/more", ""));
+    }
+
+    @Test
+    void appendIsRejectedAtTheQuota() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.setQuota(fs.getUsage().usedBytes() + 1000);
+        int handle = fs.open("/log", "a");
+
+        fs.append(handle, bytes(600));
+        fs.append(handle, bytes(400));
+        assertThrows(FileSystemException.class, () -> fs.append(handle, bytes(1)));
+        fs.close(handle);
+
+        assertEquals(1000, fs.stat("/log").size());
+        assertEquals(0, fs.getUsage().freeBytes());
+        assertEquals(recount(fs), fs.getUsage());
+    }
+
+    @Test
+    void usageStaysExactAcrossChanges() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        assertEquals(recount(fs), fs.getUsage());
+
+        fs.createDirectory("/docs");
+        fs.createFile("/docs/empty", "");
+        fs.writeBytes("/docs/large", bytes(5000));
+        fs.writeFile("/docs/small", "small");
+        assertEquals(recount(fs), fs.getUsage());
+
+        fs.writeBytes("/docs/large", bytes(3000));
+        fs.deleteFile("/docs/empty");
+        assertEquals(recount(fs), fs.getUsage());
+
+        fs.move("/docs/small", "/small");
+        fs.copy("/docs", "/backup");
+        fs.copy("/small", "/backup/small");
+        assertEquals(recount(fs), fs.getUsage());
+
+        DiskUsage snapshotted = fs.getUsage();
+        fs.snapshot("s");
+        assertEquals(snapshotted, fs.getUsage());
+
+        fs.writeBytes("/backup/large", bytes(9000));
+        fs.deleteFile("/small");
+        fs.deleteFile("/docs/large");
+        fs.deleteDirectory("/docs");
+        assertEquals(recount(fs), fs.getUsage());
+
+        fs.restore("s");
+        assertEquals(snapshotted, fs.getUsage());
+        assertEquals(recount(fs), fs.getUsage());
+        assertEquals(List.of("backup", "docs", "small"), fs.listFiles("/").stream().sorted().toList());
+    }
+
+    @Test
+    void copyAndRestoreAreCheckedAgainstTheQuota() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.writeBytes("/dir/a", bytes(800));
+        fs.snapshot("s");
+        fs.deleteFile("/dir/a");
+        fs.setQuota(fs.getUsage().usedBytes() + 500);
+        DiskUsage limited = fs.getUsage();
+
+        assertThrows(FileSystemException.class, () -> fs.restore("s"));
+        fs.writeBytes("/b", bytes(400));
+        assertThrows(FileSystemException.class, () -> fs.copy("/b", "/c"));
+
+        assertFalse(fs.exists("/c"));
+        assertFalse(fs.exists("/dir/a"));
+        assertEquals(limited.usedBytes() + 400, fs.getUsage().usedBytes());
+        assertEquals(recount(fs), fs.getUsage());
+    }
+}
@@ -0,0 +1,140 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.filesystem;
+
+import net.minecraft.nbt.CompoundTag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualFileSystemSnapshotTest {
+    @TempDir
+    Path base;
+
+    @BeforeEach
+    void setUp() {
+        FileSystemStore.setBaseDirectory(base);
+    }
+
+    @AfterEach
+    void tearDown() {
+        FileSystemStore.shutdown();
+        FileSystemStore.setBaseDirectory(null);
+    }
+
+    private static VirtualFileSystem reload(VirtualFileSystem saved, CompoundTag tag) {
+        FileSystemStore.shutdown();
+        saved.release();
+        VirtualFileSystem loaded = new VirtualFileSystem();
+        loaded.load(tag);
+        return loaded;
+    }
+
+    private long sharedBlobs() throws Exception {
+        Path shared = base.resolve("blobs");
+        if (!Files.isDirectory(shared)) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.walk(shared)) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void copyIsIndependentOfTheOriginal() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.writeFile("/src/a", "alpha");
+        fs.writeFile("/src/sub/b", "beta");
+        long before = fs.getUsage().usedBytes();
+
+        fs.copy("/src", "/dst");
+        fs.writeFile("/dst/a", "changed");
+        fs.deleteFile("/src/sub/b");
+
+        assertEquals("alpha", fs.readFile("/src/a"));
+        assertEquals("changed", fs.readFile("/dst/a"));
+        assertEquals("beta", fs.readFile("/dst/sub/b"));
+        assertFalse(fs.exists("/src/sub/b"));
+        assertTrue(fs.getUsage().usedBytes() > before);
+    }
+
+    @Test
+    void restoreBringsBackContentsAndUsage() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.writeFile("/a", "alpha");
+        fs.writeFile("/dir/b", "beta");
+        DiskUsage usage = fs.getUsage();
+        fs.snapshot("before");
+
+        fs.writeFile("/a", "a much longer replacement");
+        fs.deleteFile("/dir/b");
+        fs.deleteDirectory("/dir");
+        fs.writeFile("/new", "new");
+        fs.restore("before");
+
+        assertEquals("alpha", fs.readFile("/a"));
+        assertEquals("beta", fs.readFile("/dir/b"));
+        assertFalse(fs.exists("/new"));
+        assertEquals(usage, fs.getUsage());
+        assertEquals(List.of("before"), fs.listSnapshots());
+        assertThrows(FileSystemException.class, () -> fs.restore("missing"));
+    }
+
+    @Test
+    void snapshotsAndCopiesSurviveAReload() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.writeFile("/a", "alpha");
+        fs.copy("/a", "/b");
+        fs.snapshot("s");
+        fs.writeFile("/a", "later");
+        CompoundTag tag = new CompoundTag();
+        fs.save(tag);
+
+        VirtualFileSystem loaded = reload(fs, tag);
+
+        assertEquals("later", loaded.readFile("/a"));
+        assertEquals("alpha", loaded.readFile("/b"));
+        assertEquals(List.of("s"), loaded.listSnapshots());
+        loaded.restore("s");
+        assertEquals("alpha", loaded.readFile("/a"));
+    }
+
+    @Test
+    void deletedSnapshotOnlyRemovesBlobsNothingElseUses() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        VirtualFileSystem other = new VirtualFileSystem();
+        fs.writeFile("/f", "old contents");
+        fs.writeFile("/keep", "kept");
+        other.writeFile("/x", "kept");
+        CompoundTag tag = new CompoundTag();
+        fs.save(tag);
+        other.save(new CompoundTag());
+
+        // Only the snapshot still has "old contents", and another computer still has "kept"
+        fs.snapshot("s");
+        fs.writeFile("/f", "new contents");
+        fs.deleteFile("/keep");
+        fs.save(tag);
+        FileSystemStore.shutdown();
+        assertEquals(3, sharedBlobs());
+
+        fs.deleteSnapshot("s");
+        fs.save(tag);
+        FileSystemStore.shutdown();
+        assertEquals(2, sharedBlobs());
+
+        VirtualFileSystem loaded = reload(fs, tag);
+        assertEquals("new contents", loaded.readFile("/f"));
+        assertTrue(loaded.listSnapshots().isEmpty());
+        assertEquals("kept", other.readFile("/x"));
+    }
+}
@@ -0,0 +1,189 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.filesystem;
+
+import net.minecraft.nbt.CompoundTag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualFileSystemStoreTest {
+    private static final int INDEX_MAGIC = 0x4D434653;
+
+    @TempDir
+    Path base;
+
+    @BeforeEach
+    void setUp() {
+        FileSystemStore.setBaseDirectory(base);
+    }
+
+    @AfterEach
+    void tearDown() {
+        FileSystemStore.shutdown();
+        FileSystemStore.setBaseDirectory(null);
+    }
+
+    // Lets the queued writes reach the disk; the writer starts again on the next save
+    private static void flush() {
+        FileSystemStore.shutdown();
+    }
+
+    private static VirtualFileSystem reload(VirtualFileSystem saved, CompoundTag tag) {
+        saved.release();
+        VirtualFileSystem loaded = new VirtualFileSystem();
+        loaded.load(tag);
+        return loaded;
+    }
+
+    private Path storeDirectory(CompoundTag tag) {
+        return base.resolve("computers").resolve(tag.getString("fileStore"));
+    }
+
+    @Test
+    void savedFilesLoadBack() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        String large = "line\n".repeat(1000);
+        fs.createDirectory("/docs");
+        fs.writeFile("/docs/notes.txt", "hello");
+        fs.writeFile("/large.txt", large);
+        fs.createFile("/empty", "");
+        CompoundTag tag = new CompoundTag();
+        fs.save(tag);
+        flush();
+
+        VirtualFileSystem loaded = reload(fs, tag);
+
+        assertEquals("hello", loaded.readFile("/docs/notes.txt"));
+        assertEquals(large, loaded.readFile("/large.txt"));
+        assertEquals("", loaded.readFile("/empty"));
+        assertEquals(List.of("docs", "empty", "large.txt"), loaded.listFiles("/").stream().sorted().toList());
+        assertEquals(fs.getUsage(), loaded.getUsage());
+    }
+
+    @Test
+    void laterSavesReplaceEarlierOnes() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.writeFile("/a", "one");
+        fs.writeFile("/b", "two");
+        CompoundTag tag = new CompoundTag();
+        fs.save(tag);
+        fs.writeFile("/a", "three");
+        fs.deleteFile("/b");
+        fs.writeFile("/c", "four");
+        fs.save(tag);
+        flush();
+
+        VirtualFileSystem loaded = reload(fs, tag);
+
+        assertEquals("three", loaded.readFile("/a"));
+        assertFalse(loaded.exists("/b"));
+        assertEquals("four", loaded.readFile("/c"));
+        assertEquals(fs.getUsage(), loaded.getUsage());
+    }
+
+    @Test
+    void firstFormatIndexIsReadAndRewritten() throws Exception {
+        String id = "old-store";
+        Path directory = base.resolve("computers").resolve(id);
+        Files.createDirectories(directory.resolve("blobs"));
+        // Format 1: no sizes and no shared contents, just an id per file
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(directory.resolve("index.bin")))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(1);
+            out.writeLong(7);
+            out.writeLong(3);
+            out.writeBoolean(true);
+            out.writeInt(2);
+            out.writeUTF("a.txt");
+            out.writeBoolean(false);
+            out.writeLong(1);
+            out.writeUTF("dir");
+            out.writeBoolean(true);
+            out.writeInt(1);
+            out.writeUTF("b.txt");
+            out.writeBoolean(false);
+            out.writeLong(2);
+        }
+        Files.writeString(directory.resolve("blobs").resolve(Long.toHexString(1)), "alpha", StandardCharsets.UTF_8);
+        Files.writeString(directory.resolve("blobs").resolve(Long.toHexString(2)), "beta!", StandardCharsets.UTF_8);
+        CompoundTag tag = new CompoundTag();
+        tag.putString("fileStore", id);
+        tag.putLong("fileStoreVersion", 7);
+
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.load(tag);
+
+        assertEquals(5, fs.stat("/dir/b.txt").size());
+        assertEquals("alpha", fs.readFile("/a.txt"));
+        assertEquals("beta!", fs.readFile("/dir/b.txt"));
+
+        fs.save(tag);
+        flush();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(directory.resolve("index.bin")))) {
+            assertEquals(INDEX_MAGIC, in.readInt());
+            assertEquals(4, in.readInt());
+            assertTrue(in.readLong() > 7);
+            assertEquals(3, in.readLong());
+        }
+
+        DiskUsage usage = fs.getUsage();
+        VirtualFileSystem loaded = reload(fs, tag);
+        assertEquals("alpha", loaded.readFile("/a.txt"));
+        assertEquals("beta!", loaded.readFile("/dir/b.txt"));
+        assertEquals(2, usage.files());
+        assertEquals(usage, loaded.getUsage());
+    }
+
+    @Test
+    void copiedComputerGetsAStoreOfItsOwn() throws Exception {
+        VirtualFileSystem original = new VirtualFileSystem();
+        original.writeFile("/f", "original");
+        CompoundTag tag = new CompoundTag();
+        original.save(tag);
+        flush();
+
+        // Same tag while the original is still loaded, as after pick-block or /clone
+        CompoundTag copiedTag = new CompoundTag();
+        copiedTag.putString("fileStore", tag.getString("fileStore"));
+        copiedTag.putLong("fileStoreVersion", tag.getLong("fileStoreVersion"));
+        VirtualFileSystem duplicate = new VirtualFileSystem();
+        duplicate.load(copiedTag);
+        assertEquals("original", duplicate.readFile("/f"));
+        duplicate.writeFile("/f", "changed");
+        CompoundTag duplicateTag = new CompoundTag();
+        duplicate.save(duplicateTag);
+        original.save(tag);
+        flush();
+
+        assertNotEquals(tag.getString("fileStore"), duplicateTag.getString("fileStore"));
+        assertEquals("original", reload(original, tag).readFile("/f"));
+        assertEquals("changed", reload(duplicate, duplicateTag).readFile("/f"));
+    }
+
+    @Test
+    void destroyedFileSystemRemovesItsStore() throws Exception {
+        VirtualFileSystem fs = new VirtualFileSystem();
+        fs.writeFile("/f", "contents");
+        CompoundTag tag = new CompoundTag();
+        fs.save(tag);
+        flush();
+        assertTrue(Files.isDirectory(storeDirectory(tag)));
+
+        fs.destroy();
+        flush();
+
+        assertFalse(Files.exists(storeDirectory(tag)));
+    }
+}
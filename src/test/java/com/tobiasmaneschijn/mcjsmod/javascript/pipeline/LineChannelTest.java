@@ -0,0 +1,146 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineChannelTest {
+    private static final long WAIT_SECONDS = 5;
+
+    @Test
+    void readerGetsBufferedLinesAfterTheWriterCloses() throws Exception {
+        LineChannel channel = new LineChannel(4);
+        channel.offer("a");
+        channel.offer("b");
+        channel.closeWrite();
+
+        assertEquals(LineChannel.Offer.CLOSED, channel.offer("c"));
+        assertEquals(List.of("a", "b"), channel.take(10));
+        assertNull(channel.take(10));
+        assertNull(channel.poll(10));
+    }
+
+    @Test
+    void closingTheReadEndRefusesWritesAndDropsBufferedLines() throws Exception {
+        LineChannel channel = new LineChannel(4);
+        channel.offer("a");
+        channel.closeRead();
+
+        assertEquals(LineChannel.Offer.CLOSED, channel.offer("b"));
+        assertFalse(channel.put("c"));
+        assertNull(channel.poll(10));
+    }
+
+    @Test
+    void failureIsSeenOnceTheBufferIsDrained() {
+        LineChannel channel = new LineChannel(4);
+        channel.offer("a");
+        channel.fail("broken");
+        channel.fail("ignored");
+
+        assertEquals(List.of("a"), channel.poll(10));
+        assertNull(channel.poll(10));
+        assertEquals("broken", channel.getError());
+    }
+
+    @Test
+    void fullChannelStallsTheWriter() throws Exception {
+        LineChannel channel = new LineChannel(2);
+        assertEquals(LineChannel.Offer.ACCEPTED, channel.offer("a"));
+        assertEquals(LineChannel.Offer.ACCEPTED, channel.offer("b"));
+        assertEquals(LineChannel.Offer.FULL, channel.offer("c"));
+
+        CompletableFuture<Boolean> put = CompletableFuture.supplyAsync(() -> {
+            try {
+                return channel.put("c");
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> put.get(100, TimeUnit.MILLISECONDS));
+
+        assertEquals(List.of("a"), channel.poll(1));
+        assertTrue(put.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(List.of("b", "c"), channel.poll(10));
+    }
+
+    @Test
+    void blockedWriterIsReleasedWhenTheReaderGoesAway() throws Exception {
+        LineChannel channel = new LineChannel(1);
+        channel.offer("a");
+
+        CompletableFuture<Boolean> put = CompletableFuture.supplyAsync(() -> {
+            try {
+                return channel.put("b");
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        channel.closeRead();
+
+        assertFalse(put.get(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void readWaiterRunsOnceWhenALineArrives() {
+        LineChannel channel = new LineChannel(4);
+        AtomicInteger runs = new AtomicInteger();
+        channel.onReadable(runs::incrementAndGet);
+        assertEquals(0, runs.get());
+
+        channel.offer("a");
+        channel.offer("b");
+
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void writeWaiterRunsOnceThereIsRoom() {
+        LineChannel channel = new LineChannel(1);
+        channel.offer("a");
+        AtomicInteger runs = new AtomicInteger();
+        channel.onWritable(runs::incrementAndGet);
+        assertEquals(0, runs.get());
+
+        channel.poll(1);
+
+        assertEquals(1, runs.get());
+        assertEquals(LineChannel.Offer.ACCEPTED, channel.offer("b"));
+    }
+
+    @Test
+    void waitersRunRightAwayWhenTheyCanMakeProgress() {
+        LineChannel channel = new LineChannel(1);
+        AtomicInteger runs = new AtomicInteger();
+        channel.onWritable(runs::incrementAndGet);
+        channel.offer("a");
+        channel.onReadable(runs::incrementAndGet);
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void closingWakesBothWaiters() {
+        LineChannel empty = new LineChannel(1);
+        LineChannel full = new LineChannel(1);
+        full.offer("a");
+        AtomicInteger runs = new AtomicInteger();
+        empty.onReadable(runs::incrementAndGet);
+        full.onWritable(runs::incrementAndGet);
+
+        empty.closeWrite();
+        full.closeRead();
+
+        assertEquals(2, runs.get());
+    }
+}
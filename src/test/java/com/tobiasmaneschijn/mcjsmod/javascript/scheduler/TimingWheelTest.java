@@ -0,0 +1,103 @@
+package com.tobiasmaneschijn.mcjsmod.javascript.scheduler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    // Long ticks, so the moments spent scheduling stay within one and deadlines are base plus delay
+    private static final long TICK_MS = 1000;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MS);
+
+    private static class NamedTimeout extends TimingWheel.Timeout {
+        final long delayTicks;
+
+        NamedTimeout(long delayTicks) {
+            this.delayTicks = delayTicks;
+        }
+    }
+
+    private final List<Long> expired = new ArrayList<>();
+    private TimingWheel wheel;
+    private long base;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new TimingWheel(TICK_MS, batch -> batch.forEach(timeout -> expired.add(((NamedTimeout) timeout).delayTicks)));
+        base = System.nanoTime();
+    }
+
+    private NamedTimeout schedule(long delayTicks) {
+        NamedTimeout timeout = new NamedTimeout(delayTicks);
+        wheel.schedule(timeout, delayTicks * TICK_MS);
+        return timeout;
+    }
+
+    private void advanceTo(long ticks) {
+        wheel.advance(base + ticks * TICK_NANOS);
+    }
+
+    @Test
+    void expiresInDeadlineOrderAcrossLevels() {
+        // Level 0, level 1, level 2 and level 3 deadlines, scheduled out of order
+        long[] delays = {70_000, 3, 300, 256, 1, 16_777_300L, 65_536, 255, 257};
+        for (long delay : delays) {
+            schedule(delay);
+        }
+
+        advanceTo(20_000_000L);
+
+        assertEquals(List.of(1L, 3L, 255L, 256L, 257L, 300L, 65_536L, 70_000L, 16_777_300L), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cascadedTimeoutsNeverFireEarly() {
+        long[] delays = {255, 256, 511, 512, 65_535, 65_536, 65_537};
+        for (long delay : delays) {
+            schedule(delay);
+        }
+
+        for (long delay : delays) {
+            // Each one is still pending one tick before its deadline and fires on it
+            advanceTo(delay - 1);
+            assertFalse(expired.contains(delay), "fired early: " + delay);
+            advanceTo(delay);
+            assertTrue(expired.contains(delay), "not fired: " + delay);
+        }
+        assertEquals(List.of(255L, 256L, 511L, 512L, 65_535L, 65_536L, 65_537L), expired);
+    }
+
+    @Test
+    void cancelledTimeoutsDoNotFire() {
+        NamedTimeout near = schedule(5);
+        schedule(600);
+        NamedTimeout far = schedule(70_000);
+
+        assertTrue(wheel.cancel(near));
+        assertTrue(wheel.cancel(far));
+        assertFalse(wheel.cancel(far));
+        advanceTo(100_000);
+
+        assertEquals(List.of(600L), expired);
+        assertFalse(far.isScheduled());
+    }
+
+    @Test
+    void reschedulingMovesTheDeadline() {
+        NamedTimeout timeout = schedule(1_000);
+        wheel.schedule(timeout, 5 * TICK_MS);
+
+        advanceTo(10);
+
+        assertEquals(List.of(1_000L), expired);
+        assertEquals(0, wheel.size());
+    }
+}